@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+# Runs the benchmarks on two commits and prints the results side by side.
+#
+#   bench/compare.sh BASE HEAD [JMH options]
+#
+# e.g. bench/compare.sh main HEAD Interpreter -f 1
+#
+# Each commit is checked out into a temporary worktree and its src/ is built
+# with the build files and benchmarks of the current working tree, so both
+# are measured by the same benchmark code. A commit whose src/ lacks something
+# the benchmarks use won't build. The GC profiler is always on, so
+# allocation per operation (gc.alloc.rate.norm) is compared too.
+set -euo pipefail
+
+if [ $# -lt 2 ]; then
+    sed -n '2,12p' "$0"
+    exit 64
+fi
+base=$1
+head=$2
+shift 2
+
+root=$(git rev-parse --show-toplevel)
+java=${JAVA_HOME:+$JAVA_HOME/bin/}java
+work=$(mktemp -d)
+cleanup() {
+    git -C "$root" worktree remove --force "$work/base" 2>/dev/null || true
+    git -C "$root" worktree remove --force "$work/head" 2>/dev/null || true
+    rm -rf "$work"
+}
+trap cleanup EXIT
+
+for side in base head; do
+    rev=${!side}
+    git -C "$root" worktree add --quiet --detach "$work/$side" "$rev"
+    cp "$root/pom.xml" "$work/$side/pom.xml"
+    mkdir -p "$work/$side/core"
+    cp "$root/core/pom.xml" "$work/$side/core/pom.xml"
+    rm -rf "$work/$side/bench"
+    mkdir "$work/$side/bench"
+    cp -r "$root/bench/pom.xml" "$root/bench/src" "$work/$side/bench/"
+    (cd "$work/$side" && mvn -B -q package)
+    echo "== $side: $rev ($(git -C "$root" rev-parse --short "$rev"))"
+    "$java" --enable-preview -jar "$work/$side/bench/target/benchmarks.jar" -prof gc \
+        -rf csv -rff "$work/$side.csv" "$@"
+done
+
+# Columns: Benchmark, Mode, Threads, Samples, Score, Error, Unit, then one per parameter.
+echo
+echo "== $base -> $head"
+awk -F, '
+    { gsub(/"/, "") }
+    FNR == 1 { next }
+    { key = $1; for (i = 8; i <= NF; i++) if ($i != "") key = key " " $i }
+    NR == FNR { before[key] = $5; next }
+    key in before {
+        change = before[key] == 0 ? 0 : ($5 - before[key]) / before[key] * 100
+        printf "%-70s %16.3f %16.3f %-8s %+8.1f%%\n", key, before[key], $5, $7, change
+    }
+' "$work/base.csv" "$work/head.csv"
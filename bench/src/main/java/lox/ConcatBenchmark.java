@@ -0,0 +1,75 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds a 10 MB string by appending to it a piece at a time, then prints it.
+ * Lox has no loops, so the program is one assignment per piece. Only running
+ * the program is timed, not parsing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class ConcatBenchmark {
+    private static final int TOTAL = 10 * 1024 * 1024;
+    private static final OutputSink DISCARD = OutputSink.of(new PrintStream(OutputStream.nullOutputStream()));
+
+    @Param({"1024"})
+    int pieceLength;
+
+    private List<Stmt> statements;
+    private Chunk chunk;
+
+    @Setup
+    public void setUp() {
+        String piece = "x".repeat(pieceLength);
+        StringBuilder source = new StringBuilder("var s = \"\";\n");
+        for (int length = 0; length < TOTAL; length += pieceLength) {
+            source.append("s = s + \"").append(piece).append("\";\n");
+        }
+        source.append("print s;\n");
+
+        statements = new Parser(new Scanner(source.toString()).scanTokens()).parse();
+        chunk = new Compiler().compile(statements);
+        new Resolver().resolve(statements);
+    }
+
+    @Benchmark
+    public void interpreter() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.out = DISCARD;
+        interpreter.interpret(statements);
+    }
+
+    @Benchmark
+    public void vm() {
+        VM vm = new VM();
+        vm.out = DISCARD;
+        vm.interpret(chunk);
+    }
+
+    @Benchmark
+    public void closures() {
+        ClosureCompiler closures = new ClosureCompiler();
+        closures.out = DISCARD;
+        closures.interpret(statements);
+    }
+}
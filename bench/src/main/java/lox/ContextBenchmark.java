@@ -0,0 +1,74 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a thousand Contexts at once, each on its own virtual thread. Every
+ * context runs a program shared by all of them, which changes its globals and
+ * prints, and then one of its own, which fails a third of the time.
+ * ContextTest checks what each of them prints and reports.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class ContextBenchmark {
+    @Param({"1000"})
+    int contexts;
+
+    private Program shared;
+    private List<Program> own;
+
+    @Setup
+    public void setUp() {
+        StringBuilder source = new StringBuilder("var total = 0;\n");
+        for (int i = 0; i < 200; i++) {
+            source.append(STR."{ var x = \{i}; total = total + x; }\n");
+        }
+        shared = Program.parse(source.append("print total;\n").toString());
+
+        own = new ArrayList<>();
+        for (int i = 0; i < contexts; i++) {
+            // The runtime error is on a line of its own, so its diagnostic says which script it came from.
+            String fail = i % 3 == 0 ? STR."\{"\n".repeat(i)}total = total + \"x\";\n" : "";
+            own.add(Program.parse(STR."total = total + \{i};\nprint \"context \{i}\";\n\{fail}print total;\n"));
+        }
+    }
+
+    @Benchmark
+    public int run() throws Exception {
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < contexts; i++) {
+                Program program = own.get(i);
+                results.add(threads.submit(() -> {
+                    StringBuilder output = new StringBuilder();
+                    Context context = new Context(output);
+                    return context.run(shared) + context.run(program) + output.length();
+                }));
+            }
+        }
+        int total = 0;
+        for (Future<Integer> result : results) total += result.get();
+        return total;
+    }
+}
@@ -0,0 +1,81 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Typing into a statement in the middle of a file and deleting it again, with
+ * a Document, against scanning and parsing the whole file. A digit changes
+ * one statement. A newline moves every statement after it down a line, and
+ * then the tree is read at the edit and at the end of the file. Both should
+ * take the same time whatever the file's size. DocumentTest checks that the
+ * Document always matches a full parse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class DocumentBenchmark {
+    @Param({"10", "1000", "10000"})
+    int kilobytes;
+
+    private String source;
+    private Document document;
+    private int offset;
+    private int lineStart;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder("var a = 1;\nvar b = 2;\n");
+        for (int i = 0; text.length() < kilobytes * 1024; i++) {
+            text.append(STR."a = (a * 3 + b / 2 - \{i % 7}) * 0.5;\n{ var c = a; print c + b; }\n");
+        }
+        source = text.toString();
+        document = new Document(source);
+        offset = source.indexOf("- 3)", source.length() / 2) + 2;
+        lineStart = source.lastIndexOf('\n', offset) + 1;
+    }
+
+    @Benchmark
+    public Document edit() {
+        document.edit(offset, 0, "1");
+        document.edit(offset, 1, "");
+        return document;
+    }
+
+    @Benchmark
+    public void newlineThenRead(Blackhole blackhole) {
+        document.edit(lineStart, 0, "\n");
+        read(blackhole);
+        document.edit(lineStart, 1, "");
+        read(blackhole);
+    }
+
+    @Benchmark
+    public List<Stmt> fullParse() {
+        return new Parser(new Scanner(source).scanTokens()).parse();
+    }
+
+    // The statement at the edit, and the last one, which the edit moved.
+    private void read(Blackhole blackhole) {
+        List<Stmt> statements = document.statements();
+        blackhole.consume(statements.get(statements.size() / 2));
+        blackhole.consume(statements.getLast());
+        blackhole.consume(document.errors().size());
+    }
+}
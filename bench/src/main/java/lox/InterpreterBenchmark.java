@@ -0,0 +1,61 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    private static final OutputSink DISCARD = OutputSink.of(new PrintStream(OutputStream.nullOutputStream()));
+
+    private static final Budget GENEROUS = new Budget(1L << 40, 3_600_000, 1L << 40);
+
+    @Param({"arithmetic", "nested", "globals", "strings"})
+    String source;
+
+    // Parsed and resolved once. Running doesn't change them.
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(LoxSources.get(source)).scanTokens()).parse();
+        new Resolver().resolve(statements);
+    }
+
+    // A fresh interpreter each time, so every run starts with no globals.
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.out = DISCARD;
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+
+    // The same with every limit counted and checked, but set too high to be reached.
+    @Benchmark
+    public Interpreter interpretWithBudget() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.out = DISCARD;
+        interpreter.limit(GENEROUS);
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+}
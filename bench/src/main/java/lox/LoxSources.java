@@ -0,0 +1,69 @@
+package lox;
+
+/**
+ * Generated Lox programs for the benchmarks, each a few hundred KB. Lox has no
+ * loops or functions yet, so repetition is written out.
+ */
+final class LoxSources {
+    private LoxSources() {}
+
+    static String get(String name) {
+        return switch (name) {
+            case "arithmetic" -> arithmetic();
+            case "nested" -> nested();
+            case "globals" -> globals();
+            case "strings" -> strings();
+            default -> throw new IllegalArgumentException(STR."Unknown source \{name}");
+        };
+    }
+
+    // Long numeric expressions over a few globals.
+    static String arithmetic() {
+        StringBuilder source = new StringBuilder("var a = 1;\nvar b = 2.5;\nvar c = 0;\n");
+        for (int i = 0; i < 5000; i++) {
+            source.append(STR."a = (a * 3 + b / 2 - \{i % 7}) * 0.5 + (b - a) / 3;\n");
+            source.append(STR."b = -b + a * 1.0001 - (c - \{i}.25) / (a + 4);\n");
+            source.append("c = c + a - b * 0.25;\n");
+            if (i % 100 == 0) source.append("print a + b + c;\n");
+        }
+        return source.toString();
+    }
+
+    // Blocks twenty deep, each declaring locals that read the enclosing ones.
+    static String nested() {
+        StringBuilder source = new StringBuilder("var total = 0;\n");
+        for (int i = 0; i < 300; i++) {
+            for (int depth = 0; depth < 20; depth++) {
+                String outer = depth == 0 ? String.valueOf(i) : STR."x\{depth - 1} + y\{depth - 1}";
+                source.append(STR."{ var x\{depth} = \{outer}; var y\{depth} = x\{depth} * 2;\n");
+            }
+            source.append("total = total + x19 - y0;\n");
+            source.append("}".repeat(20)).append('\n');
+        }
+        return source.append("print total;\n").toString();
+    }
+
+    // Two thousand globals, defined and then read and assigned by name.
+    static String globals() {
+        int count = 2000;
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            source.append(STR."var g\{i} = \{i};\n");
+        }
+        for (int i = 0; i < 10000; i++) {
+            source.append(STR."g\{i % count} = g\{(i * 7) % count} + g\{(i * 13) % count};\n");
+        }
+        return source.append("print g0;\n").toString();
+    }
+
+    // Concatenation of literals and variables, printed as it goes.
+    static String strings() {
+        StringBuilder source = new StringBuilder("var s = \"\";\nvar name = \"lox\";\n");
+        for (int i = 0; i < 5000; i++) {
+            source.append(STR."var line = \"item \{i}: \" + name + \" -> \" + \"\{"abcdefghij".substring(i % 10)}\";\n");
+            source.append("s = s + line;\n");
+            if (i % 10 == 0) source.append("print line;\n");
+        }
+        return source.append("print s;\n").toString();
+    }
+}
@@ -0,0 +1,47 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"arithmetic", "nested", "globals", "strings"})
+    String source;
+
+    // Scanned once. The parser only reads the list, or the buffer for --compact-tokens.
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        tokens = new Scanner(LoxSources.get(source)).scanTokens();
+        buffer = new Scanner(LoxSources.get(source)).scanBuffer();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> parseCompact() {
+        return new Parser(buffer).parse();
+    }
+}
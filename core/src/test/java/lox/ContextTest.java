@@ -0,0 +1,96 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class ContextTest {
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * Thousands of Contexts at once, each on its own virtual thread. Every
+     * context runs a program shared by all of them, which changes its globals
+     * and prints, and then one of its own, which fails a third of the time.
+     * Each must print and report exactly what it would have alone.
+     */
+    @Test
+    void contextsRunningAtOnceDontSeeEachOther() throws Exception {
+        int contexts = 5000;
+        StringBuilder source = new StringBuilder("var total = 0;\n");
+        for (int i = 0; i < 200; i++) {
+            source.append(STR."{ var x = \{i}; total = total + x; }\n");
+        }
+        Program shared = Program.parse(source.append("print total;\n").toString());
+        List<Program> own = new ArrayList<>();
+        for (int i = 0; i < contexts; i++) {
+            // The runtime error is on a line of its own, so its diagnostic says which script it came from.
+            String fail = i % 3 == 0 ? STR."\{"\n".repeat(i)}total = total + \"x\";\n" : "";
+            own.add(Program.parse(STR."total = total + \{i};\nprint \"context \{i}\";\n\{fail}print total;\n"));
+        }
+
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < contexts; i++) {
+                int id = i;
+                results.add(threads.submit(() -> {
+                    StringBuilder output = new StringBuilder();
+                    Context context = new Context(output);
+                    assertEquals(0, context.run(shared), STR."context \{id}, shared program");
+                    boolean failing = id % 3 == 0;
+                    assertEquals(failing ? 70 : 0, context.run(own.get(id)), STR."context \{id}");
+
+                    String expected = STR."19900\{NEWLINE}context \{id}\{NEWLINE}";
+                    if (!failing) expected += (19900 + id) + NEWLINE;
+                    assertEquals(expected, output.toString(), STR."context \{id}");
+                    List<Diagnostics.Diagnostic> expectedDiagnostics = failing
+                            ? List.of(new Diagnostics.Diagnostic(Diagnostics.Kind.RUNTIME, 3 + id, "",
+                                    "Operands must both be numbers or strings"))
+                            : List.of();
+                    assertEquals(expectedDiagnostics, context.diagnostics().all(), STR."context \{id}");
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> result : results) result.get();
+    }
+
+    @Test
+    void programsInternOnlyTheirOwnNames() {
+        int before = SymbolTable.SHARED.count();
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            many.append(STR."var name\{i} = \{i};\n");
+        }
+        assertEquals(100_000, Program.parse(many.toString()).symbols().count());
+
+        Program small = Program.parse("var x = 1;");
+        assertEquals(1, small.symbols().count());
+        assertEquals(before, SymbolTable.SHARED.count());
+
+        StringBuilder output = new StringBuilder();
+        Context context = new Context(output);
+        assertEquals(0, context.run(small));
+        assertEquals(0, context.run(Program.parse("print x;")));
+        assertEquals(STR."1\{NEWLINE}", output.toString());
+    }
+
+    @Test
+    void globalsCarryOverBetweenPrograms() {
+        StringBuilder output = new StringBuilder();
+        Context context = new Context(output);
+        assertEquals(0, context.run(Program.parse("var a = 1;\nvar b = \"two\";")));
+        // Doesn't name b, which still has to be there for the program after it.
+        assertEquals(0, context.run(Program.parse("a = a + 1;\nprint a;")));
+        assertEquals(0, context.run(Program.parse("print b;\nprint a;\nvar c = 3;")));
+        assertEquals(70, context.run(Program.parse("print d;")));
+        assertEquals(0, context.run(Program.parse("print c;")));
+        assertEquals(STR."2\{NEWLINE}two\{NEWLINE}2\{NEWLINE}3\{NEWLINE}", output.toString());
+        assertEquals("Undefined variable 'd'.", context.diagnostics().all().getFirst().message());
+    }
+}
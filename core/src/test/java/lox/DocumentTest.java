@@ -0,0 +1,168 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Random edits to small random programs, mostly broken ones. After them the
+ * Document must hold just what scanning and parsing the whole text again
+ * gives: the text, the statements with the line of every statement and
+ * token, and the errors.
+ */
+class DocumentTest {
+    // Pieces of Lox for the random programs and edits, chosen to open and close strings,
+    // comments and blocks, and to break statements in the ways that make the parser recover.
+    private static final String[] PIECES = {
+            "print ", "var ", "x", "y1", " = ", "1", "2.5", " + ", " * ", "-", "!", "(", ")",
+            "{", "}", ";", ";\n", "\n", "\n\n", "\"", "\"s\"", "// c\n", "/", " ", "==", "@",
+            "true", "nil", "z = 3;\n", "{ var q = 1; print q; }\n",
+    };
+
+    private static final long[] SEEDS = {1, 2, 17, 42, 0x5eed_f00dL};
+
+    @Test
+    void editsMatchAFullParse() {
+        for (long seed : SEEDS) {
+            check(seed, 200, 60);
+        }
+    }
+
+    @Test
+    void linesMoveWithEditsAbove() {
+        Document document = new Document("var a = 1;\nprint a;\n{ var b = a; print b + \"x\" ; }\n");
+        document.edit(0, 0, "\n\n");
+        document.edit(0, 0, "print 0;\n");
+        document.edit("print 0;\n".length(), 1, "");
+        Stmt.Print print = (Stmt.Print) document.statements().get(2);
+        assertEquals(4, ((Expr.Variable) print.expression).name.line);
+        Stmt.Block block = (Stmt.Block) document.statements().get(3);
+        assertEquals(4, print.line);
+        assertEquals(5, block.line);
+        assertEquals(5, ((Stmt.Var) block.statements.getFirst()).name.line);
+        assertEquals(List.of(), document.errors());
+
+        document.edit(document.text().indexOf("a;"), 1, "");
+        assertEquals("[4] Error at ';': Expect expression", document.errors().getFirst().toString());
+    }
+
+    private static void check(long seed, int programs, int edits) {
+        Random random = new Random(seed);
+        for (int program = 0; program < programs; program++) {
+            StringBuilder text = new StringBuilder();
+            int pieces = random.nextInt(40);
+            for (int i = 0; i < pieces; i++) {
+                text.append(random.nextBoolean()
+                        ? STR."var v\{i} = \{i};\nprint v\{i} + 1;\n"
+                        : PIECES[random.nextInt(PIECES.length)]);
+            }
+            Document document = new Document(text.toString());
+            compare(document, text.toString(), seed);
+            for (int edit = 0; edit < edits; edit++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(12, text.length() - offset) + 1) : 0;
+                String inserted = random.nextInt(4) == 0 ? "" : PIECES[random.nextInt(PIECES.length)];
+                document.edit(offset, removed, inserted);
+                text.replace(offset, offset + removed, inserted);
+                // Not reading after every edit lets lines move more than once before they're read.
+                if (random.nextInt(3) > 0 || edit == edits - 1) compare(document, text.toString(), seed);
+            }
+        }
+    }
+
+    private static void compare(Document document, String text, long seed) {
+        Diagnostics diagnostics = new Diagnostics();
+        List<Stmt> statements = Lox.reportingTo(diagnostics, () -> new Parser(new Scanner(text).scanTokens()).parse());
+        String message = STR."seed \{seed}, text:\n\{text}";
+        assertEquals(text, document.text(), message);
+        assertEquals(describe(statements), describe(document.statements()), message);
+        assertEquals(diagnostics.all(), document.errors(), message);
+    }
+
+    // The statements as text, with the line of every statement and token, since that's what a moved statement can get wrong.
+    private static String describe(List<Stmt> statements) {
+        StringBuilder out = new StringBuilder();
+        for (Stmt statement : statements) {
+            describe(statement, out);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void describe(Stmt stmt, StringBuilder out) {
+        switch (stmt) {
+            case null -> out.append("error");
+            case Stmt.Expression expression -> {
+                out.append("(expression@").append(expression.line).append(' ');
+                describe(expression.expression, out);
+                out.append(')');
+            }
+            case Stmt.Print print -> {
+                out.append("(print@").append(print.line).append(' ');
+                describe(print.expression, out);
+                out.append(')');
+            }
+            case Stmt.Var var -> {
+                out.append("(var ");
+                describe(var.name, out);
+                if (var.initializer != null) {
+                    out.append(' ');
+                    describe(var.initializer, out);
+                }
+                out.append(')');
+            }
+            case Stmt.Block block -> {
+                out.append("(block@").append(block.line);
+                for (Stmt statement : block.statements) {
+                    out.append(' ');
+                    describe(statement, out);
+                }
+                out.append(')');
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+        }
+    }
+
+    private static void describe(Expr expr, StringBuilder out) {
+        switch (expr) {
+            case Expr.Literal literal -> out.append(literal.value instanceof String text ? STR."\"\{text}\"" : literal.value);
+            case Expr.Grouping grouping -> {
+                out.append("(group ");
+                describe(grouping.expression, out);
+                out.append(')');
+            }
+            case Expr.Variable variable -> describe(variable.name, out);
+            case Expr.Assign assign -> {
+                out.append("(= ");
+                describe(assign.name, out);
+                out.append(' ');
+                describe(assign.value, out);
+                out.append(')');
+            }
+            case Expr.Unary unary -> {
+                out.append('(');
+                describe(unary.operator, out);
+                out.append(' ');
+                describe(unary.right, out);
+                out.append(')');
+            }
+            case Expr.Binary binary -> {
+                out.append('(');
+                describe(binary.operator, out);
+                out.append(' ');
+                describe(binary.left, out);
+                out.append(' ');
+                describe(binary.right, out);
+                out.append(')');
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+        }
+    }
+
+    private static void describe(Token token, StringBuilder out) {
+        out.append(token.lexeme).append('@').append(token.line);
+    }
+}
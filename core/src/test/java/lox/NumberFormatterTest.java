@@ -0,0 +1,121 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * NumberFormatter against what stringify() printed before it: Double.toString()
+ * with a trailing ".0" taken off.
+ */
+class NumberFormatterTest {
+    private static final long[] SEEDS = {1, 42, 0x5eed_f00dL};
+    private static final int RANDOM_COUNT = 500_000;
+
+    @Test
+    void specialValues() {
+        double[] values = {
+                0.0, -0.0, 1.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Math.nextDown(Double.MIN_NORMAL), Math.nextUp(Double.MIN_NORMAL),
+                0.1, 0.2, 0.3, 0.1 + 0.2, 1.0 / 3, 2.0 / 3, 100.0, 1e7, 1e-3, 9.999999999999999e22,
+                (double) Long.MAX_VALUE, (double) Long.MIN_VALUE, 4.35, 2.5e-324, 1.7976931348623157e308,
+        };
+        for (double value : values) {
+            check(value, "special");
+        }
+    }
+
+    @Test
+    void randomBitPatterns() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (int i = 0; i < RANDOM_COUNT; i++) {
+                check(Double.longBitsToDouble(random.nextLong()), STR."random bits, seed \{seed}");
+            }
+        }
+    }
+
+    @Test
+    void subnormals() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (int i = 0; i < RANDOM_COUNT; i++) {
+                long bits = random.nextLong() & ((1L << 52) - 1);
+                check(Double.longBitsToDouble(bits), STR."subnormals, seed \{seed}");
+            }
+        }
+        for (long bits = 1; bits < 10_000; bits++) {
+            check(Double.longBitsToDouble(bits), "smallest subnormals");
+        }
+    }
+
+    @Test
+    void integersAndAmounts() {
+        for (int i = -100_000; i <= 100_000; i++) {
+            check(i, "small integers");
+            check(i / 100.0, "two-decimal amounts");
+        }
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (int i = 0; i < RANDOM_COUNT; i++) {
+                // Up to 2^53, where every integer is still exact, and past it.
+                check((double) (random.nextLong() >> random.nextInt(64)), STR."integers, seed \{seed}");
+            }
+        }
+    }
+
+    @Test
+    void mixedMagnitudes() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (int i = 0; i < RANDOM_COUNT; i++) {
+                double value = random.nextDouble() * Math.pow(10, random.nextInt(60) - 30);
+                check(random.nextBoolean() ? value : -value, STR."mixed magnitudes, seed \{seed}");
+            }
+        }
+    }
+
+    @Test
+    void powersAndTheirNeighbours() {
+        for (int e = -1074; e <= 1023; e++) {
+            neighbours(Math.scalb(1.0, e), STR."2^\{e}");
+        }
+        for (int e = -325; e <= 309; e++) {
+            neighbours(Double.parseDouble(STR."1e\{e}"), STR."10^\{e}");
+        }
+    }
+
+    private static void neighbours(double value, String what) {
+        double below = value;
+        double above = value;
+        for (int i = 0; i < 4; i++) {
+            check(below, what);
+            check(above, what);
+            below = Math.nextDown(below);
+            above = Math.nextUp(above);
+        }
+    }
+
+    private static void check(double value, String what) {
+        String expected = stringify(value);
+        byte[] bytes = new byte[NumberFormatter.MAX_LENGTH + 3];
+        int end = NumberFormatter.format(value, bytes, 3);
+        String formatted = new String(bytes, 3, end - 3, StandardCharsets.ISO_8859_1);
+        String message = STR."\{what}: bits 0x\{Long.toHexString(Double.doubleToRawLongBits(value))}";
+        assertEquals(expected, formatted, message);
+        assertEquals(expected, NumberFormatter.toString(value), message);
+    }
+
+    // How numbers were printed before NumberFormatter.
+    private static String stringify(double value) {
+        String text = Double.toString(value);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+}
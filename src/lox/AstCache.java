@@ -0,0 +1,368 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Parsed programs saved to disk, so running an unchanged script again skips
+ * the scanner and parser. A cache file starts with the SHA-256 of the source
+ * (and the charset it was decoded with) and the format version, so any change
+ * to either makes it a miss, and with a checksum of the rest, so a damaged
+ * file is a miss too rather than a different program.
+ *
+ * The body is the symbol table followed by the statements, written depth
+ * first with a tag byte per node and variable-length ints for lines, counts
+ * and symbol indexes. It's read back through a memory mapping.
+ */
+final class AstCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    // Bump whenever the encoding below or the meaning of the AST changes.
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 32 + 4;
+
+    private static final int EXPRESSION = 0, PRINT = 1, VAR = 2, BLOCK = 3;
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4,
+            GROUPING = 5, VARIABLE = 6, ASSIGN = 7, UNARY = 8, BINARY = 9, SMALL_INTEGER = 10;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path file;
+    private final byte[] key;
+
+    // The cache for a script goes next to it. In a shared directory, it's named
+    // after the source's hash instead, so copies of a script share one file.
+    AstCache(Path script, Path directory, byte[] source, Charset charset) {
+        this.key = key(source, charset);
+        if (directory == null) {
+            this.file = script.resolveSibling(STR."\{script.getFileName()}.astc");
+        } else {
+            this.file = directory.resolve(STR."\{HexFormat.of().formatHex(key)}.astc");
+        }
+    }
+
+    // The cached statements, or null if there's no usable cache file.
+    List<Stmt> load() {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            byte[] stored = new byte[key.length];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, key)) return null;
+            int checksum = buffer.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice());
+            if ((int) crc.getValue() != checksum) return null;
+            return new Reader(buffer).read();
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or damaged. Parse the source instead.
+            return null;
+        }
+    }
+
+    // Saves statements, which must not have been resolved or optimized yet.
+    // Failing to write the cache never fails the run.
+    void store(List<Stmt> statements) {
+        try {
+            byte[] body = new Writer().write(statements);
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).put(key).putInt((int) crc.getValue());
+
+            // Written beside the destination and moved into place, so a concurrent
+            // run never maps a half-written file.
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = directory.resolve(STR."\{file.getFileName()}.\{ProcessHandle.current().pid()}.tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    out.write(header.array());
+                    out.write(body);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Read-only directory, full disk: just run without a cache.
+        }
+    }
+
+    private static byte[] key(byte[] source, Charset charset) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(charset.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return digest.digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<Symbol, Integer> symbols = new HashMap<>();
+        private final List<Symbol> symbolList = new ArrayList<>();
+
+        byte[] write(List<Stmt> statements) throws IOException {
+            writeInt(out, statements.size());
+            for (Stmt statement : statements) {
+                write(statement);
+            }
+
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream tableOut = new DataOutputStream(table);
+            writeInt(tableOut, symbolList.size());
+            for (Symbol symbol : symbolList) {
+                writeString(tableOut, symbol.name);
+            }
+            bytes.writeTo(tableOut);
+            return table.toByteArray();
+        }
+
+        private void write(Stmt stmt) throws IOException {
+            switch (stmt) {
+                case Stmt.Expression expression -> {
+                    out.writeByte(EXPRESSION);
+                    writeInt(out, expression.line);
+                    write(expression.expression);
+                }
+                case Stmt.Print print -> {
+                    out.writeByte(PRINT);
+                    writeInt(out, print.line);
+                    write(print.expression);
+                }
+                case Stmt.Var var -> {
+                    out.writeByte(VAR);
+                    writeName(var.name);
+                    out.writeBoolean(var.initializer != null);
+                    if (var.initializer != null) write(var.initializer);
+                }
+                case Stmt.Block block -> {
+                    out.writeByte(BLOCK);
+                    writeInt(out, block.line);
+                    writeInt(out, block.statements.size());
+                    for (Stmt statement : block.statements) {
+                        write(statement);
+                    }
+                }
+                default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+            }
+        }
+
+        private void write(Expr expr) throws IOException {
+            switch (expr) {
+                case Expr.Literal literal -> {
+                    switch (literal.value) {
+                        case null -> out.writeByte(NIL);
+                        case Boolean value -> out.writeByte(value ? TRUE : FALSE);
+                        // Most numbers in scripts are small integers, which fit in a byte or two.
+                        case Double value when value >= 0 && value <= Integer.MAX_VALUE
+                                && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits((int) (double) value) -> {
+                            out.writeByte(SMALL_INTEGER);
+                            writeInt(out, (int) (double) value);
+                        }
+                        case Double value -> {
+                            out.writeByte(NUMBER);
+                            out.writeDouble(value);
+                        }
+                        case String value -> {
+                            out.writeByte(STRING);
+                            writeString(out, value);
+                        }
+                        default -> throw new IllegalArgumentException(STR."Unknown literal \{literal.value}");
+                    }
+                }
+                case Expr.Grouping grouping -> {
+                    out.writeByte(GROUPING);
+                    write(grouping.expression);
+                }
+                case Expr.Variable variable -> {
+                    out.writeByte(VARIABLE);
+                    writeName(variable.name);
+                }
+                case Expr.Assign assign -> {
+                    out.writeByte(ASSIGN);
+                    writeName(assign.name);
+                    write(assign.value);
+                }
+                case Expr.Unary unary -> {
+                    out.writeByte(UNARY);
+                    writeOperator(unary.operator);
+                    write(unary.right);
+                }
+                case Expr.Binary binary -> {
+                    out.writeByte(BINARY);
+                    writeOperator(binary.operator);
+                    write(binary.left);
+                    write(binary.right);
+                }
+                default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+            }
+        }
+
+        private void writeName(Token name) throws IOException {
+            Integer index = symbols.get(name.symbol);
+            if (index == null) {
+                index = symbolList.size();
+                symbolList.add(name.symbol);
+                symbols.put(name.symbol, index);
+            }
+            writeInt(out, index);
+            writeInt(out, name.line);
+        }
+
+        private void writeOperator(Token operator) throws IOException {
+            out.writeByte(operator.type.ordinal());
+            writeInt(out, operator.line);
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(out, utf8.length);
+            out.write(utf8);
+        }
+
+        // Seven bits at a time, low bits first, with the top bit set on all but the last byte.
+        private static void writeInt(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer in;
+        private Symbol[] symbols;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Stmt> read() {
+            symbols = new Symbol[readCount()];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = SymbolTable.SHARED.intern(readString());
+            }
+            List<Stmt> statements = readStatements();
+            if (in.hasRemaining()) throw new IllegalStateException("Trailing bytes");
+            return statements;
+        }
+
+        private List<Stmt> readStatements() {
+            int count = readCount();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private Stmt readStatement() {
+            return switch (in.get()) {
+                case EXPRESSION -> {
+                    int line = readInt();
+                    yield new Stmt.Expression(readExpression(), line);
+                }
+                case PRINT -> {
+                    int line = readInt();
+                    yield new Stmt.Print(readExpression(), line);
+                }
+                case VAR -> {
+                    Token name = readName();
+                    yield new Stmt.Var(name, in.get() != 0 ? readExpression() : null);
+                }
+                case BLOCK -> {
+                    int line = readInt();
+                    yield new Stmt.Block(readStatements(), line);
+                }
+                default -> throw new IllegalStateException("Bad statement tag");
+            };
+        }
+
+        private Expr readExpression() {
+            return switch (in.get()) {
+                case NIL -> new Expr.Literal(null);
+                case TRUE -> new Expr.Literal(true);
+                case FALSE -> new Expr.Literal(false);
+                case NUMBER -> new Expr.Literal(in.getDouble());
+                case SMALL_INTEGER -> new Expr.Literal((double) readInt());
+                case STRING -> new Expr.Literal(readString());
+                case GROUPING -> new Expr.Grouping(readExpression());
+                case VARIABLE -> new Expr.Variable(readName());
+                case ASSIGN -> {
+                    Token name = readName();
+                    yield new Expr.Assign(name, readExpression());
+                }
+                case UNARY -> {
+                    Token operator = readOperator();
+                    yield new Expr.Unary(operator, readExpression());
+                }
+                case BINARY -> {
+                    Token operator = readOperator();
+                    Expr left = readExpression();
+                    yield new Expr.Binary(left, operator, readExpression());
+                }
+                default -> throw new IllegalStateException("Bad expression tag");
+            };
+        }
+
+        private Token readName() {
+            Symbol symbol = symbols[readInt()];
+            return new Token(TokenType.IDENTIFIER, symbol.name, null, readInt(), symbol);
+        }
+
+        private Token readOperator() {
+            TokenType type = TYPES[in.get()];
+            String lexeme = TokenBuffer.fixedLexeme(type);
+            if (lexeme == null) throw new IllegalStateException("Bad operator");
+            return new Token(type, lexeme, null, readInt());
+        }
+
+        private String readString() {
+            int length = readCount();
+            String value = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+            in.position(in.position() + length);
+            return value;
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.get();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalStateException("Bad int");
+        }
+
+        // A count of things that each take at least a byte, so it can't be more than what's left.
+        private int readCount() {
+            int count = readInt();
+            if (count < 0 || count > in.remaining()) throw new IllegalStateException("Bad count");
+            return count;
+        }
+    }
+}
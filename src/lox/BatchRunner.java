@@ -0,0 +1,204 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Runs many scripts in one JVM for --batch, each in its own Context on its
+ * own virtual thread, with at most a given number running at once. A script
+ * that fails, or even crashes the interpreter, only fails its own result.
+ *
+ * The summary is JSON Lines, one object per script in the order they were
+ * listed, then one with the totals:
+ *
+ *     {"script":"a.lox","status":0,"millis":3,"output":"3\n","diagnostics":[]}
+ *     {"script":"b.lox","status":70,"millis":1,"output":"","diagnostics":[{"kind":"runtime","line":2,"message":"..."}]}
+ *     {"scripts":2,"passed":1,"syntaxErrors":0,"runtimeErrors":1,"unreadable":0,"millis":9}
+ *
+ * A script stopped by the budget has status 70 and a diagnostic of kind
+ * "budget". A script that can't be read has status 66 and an "error" instead.
+ */
+final class BatchRunner {
+    private record Result(Path script, int status, long millis, String output,
+                          List<Diagnostics.Diagnostic> diagnostics, String error) {}
+
+    private final Charset charset;
+    private final Semaphore running;
+    // Applies to each script on its own. Null for none.
+    private final Budget budget;
+
+    BatchRunner(Charset charset, int concurrency, Budget budget) {
+        this.charset = charset;
+        this.running = new Semaphore(concurrency);
+        this.budget = budget;
+    }
+
+    // The .lox files under a directory, or the paths listed in a manifest file, one per line,
+    // relative to the manifest. Blank lines and lines starting with # are skipped.
+    static List<Path> scripts(Path batch) throws IOException {
+        if (Files.isDirectory(batch)) {
+            try (Stream<Path> files = Files.walk(batch)) {
+                return files.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file))
+                        .sorted()
+                        .toList();
+            }
+        }
+        Path directory = batch.toAbsolutePath().getParent();
+        List<Path> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(batch)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            scripts.add(directory.resolve(line).normalize());
+        }
+        return scripts;
+    }
+
+    // Prints the summary to out and returns the highest status of any script, so 0 if all passed.
+    int run(List<Path> scripts, OutputSink out) throws InterruptedException {
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+        // Results wait here until those listed before them have been printed.
+        Deque<Future<Result>> pending = new ArrayDeque<>();
+        int next = 0;
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path script : scripts) {
+                // Only concurrency scripts run at once. The next thread starts when one of them finishes.
+                running.acquire();
+                pending.add(threads.submit(() -> runOne(script)));
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    summary.add(get(pending.poll(), scripts.get(next++)), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                summary.add(get(pending.poll(), scripts.get(next++)), out);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out.println(STR."{\"scripts\":\{scripts.size()},\"passed\":\{summary.passed},\"syntaxErrors\":\{summary.syntaxErrors},\"runtimeErrors\":\{summary.runtimeErrors},\"unreadable\":\{summary.unreadable},\"millis\":\{millis}}");
+        out.flush();
+        return summary.worst;
+    }
+
+    private static final class Summary {
+        int worst = 0;
+        int passed = 0;
+        int syntaxErrors = 0;
+        int runtimeErrors = 0;
+        int unreadable = 0;
+
+        void add(Result result, OutputSink out) {
+            out.println(toJson(result));
+            worst = Math.max(worst, result.status());
+            switch (result.status()) {
+                case 0 -> passed++;
+                case 65 -> syntaxErrors++;
+                case 70 -> runtimeErrors++;
+                default -> unreadable++;
+            }
+        }
+    }
+
+    private Result runOne(Path script) {
+        long start = System.nanoTime();
+        StringBuilder output = new StringBuilder();
+        try {
+            String source = new String(Files.readAllBytes(script), charset);
+            Context context = new Context(output);
+            int status;
+            try {
+                Program program = Program.parse(source);
+                status = budget == null ? context.run(program) : context.run(program, budget);
+            } catch (BudgetExceeded e) {
+                context.diagnostics().budgetExceeded(e);
+                status = 70;
+            } catch (RuntimeException | StackOverflowError e) {
+                // A bug in the interpreter, or a script nested too deeply for it: still only this script's problem.
+                return new Result(script, 70, millis(start), output.toString(), context.diagnostics().all(),
+                        STR."Internal error: \{e}");
+            }
+            return new Result(script, status, millis(start), output.toString(), context.diagnostics().all(), null);
+        } catch (IOException e) {
+            return new Result(script, 66, millis(start), "", List.of(), STR."Could not read script: \{e}");
+        } finally {
+            running.release();
+        }
+    }
+
+    private static Result get(Future<Result> future, Path script) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // runOne() catches what a script can throw, so this is something like an OutOfMemoryError.
+            return new Result(script, 70, 0, "", List.of(), STR."Internal error: \{e.getCause()}");
+        }
+    }
+
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static String toJson(Result result) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"script\":");
+        quote(result.script().toString(), json);
+        json.append(",\"status\":").append(result.status());
+        json.append(",\"millis\":").append(result.millis());
+        json.append(",\"output\":");
+        quote(result.output(), json);
+        json.append(",\"diagnostics\":[");
+        for (int i = 0; i < result.diagnostics().size(); i++) {
+            Diagnostics.Diagnostic diagnostic = result.diagnostics().get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"kind\":\"").append(diagnostic.kind().name().toLowerCase(Locale.ROOT));
+            json.append("\",\"line\":").append(diagnostic.line());
+            if (!diagnostic.where().isEmpty()) {
+                json.append(",\"where\":");
+                quote(diagnostic.where(), json);
+            }
+            json.append(",\"message\":");
+            quote(diagnostic.message(), json);
+            json.append('}');
+        }
+        json.append(']');
+        if (result.error() != null) {
+            json.append(",\"error\":");
+            quote(result.error(), json);
+        }
+        return json.append('}').toString();
+    }
+
+    private static void quote(String text, StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
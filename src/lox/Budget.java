@@ -0,0 +1,102 @@
+package lox;
+
+/**
+ * Limits on running a script that isn't trusted: how many statements it may
+ * execute, for how many milliseconds, and roughly how many bytes it may
+ * allocate for strings and block frames. Long.MAX_VALUE means no limit.
+ *
+ * Limits are checked at cheap points only. Steps are counted at each
+ * top-level statement, and for a whole block as it's entered. The clock
+ * starts at the first statement and is read every 1024 after it. Bytes are
+ * counted where a block makes a frame and where + makes a string. Going over
+ * throws BudgetExceeded, which a script can't catch, and leaves the
+ * interpreter ready to run again. Only the tree-walking Interpreter enforces
+ * a budget.
+ */
+public record Budget(long steps, long millis, long bytes) {
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    public Budget withSteps(long steps) {
+        return new Budget(steps, millis, bytes);
+    }
+
+    public Budget withMillis(long millis) {
+        return new Budget(steps, millis, bytes);
+    }
+
+    public Budget withBytes(long bytes) {
+        return new Budget(steps, millis, bytes);
+    }
+
+    // What one run has used so far.
+    static final class Meter {
+        private static final int CLOCK_INTERVAL = 1024;
+        // An Environment and its slot array, without the slots.
+        private static final int FRAME_BYTES = 48;
+        // A Rope node, when + doesn't copy its operands into a String.
+        private static final int ROPE_BYTES = 32;
+
+        private final Budget budget;
+        private final boolean timed;
+        // Set at the first statement, so the time spent parsing isn't counted.
+        private boolean started = false;
+        private long deadline;
+        private long steps = 0;
+        // The step count at which the limit or the clock is looked at next.
+        private long nextCheck = 0;
+        private long bytes = 0;
+
+        Meter(Budget budget) {
+            this.budget = budget;
+            timed = budget.millis < Long.MAX_VALUE / 1_000_000;
+        }
+
+        // For a top-level statement.
+        void step(Stmt stmt) {
+            if (++steps > nextCheck) check(stmt);
+        }
+
+        // Counts a block's statements all at once on entering it, and its frame if it needs one.
+        void enter(Stmt.Block block) {
+            steps += block.statements.size();
+            if (steps > nextCheck) check(block);
+            if (block.slots > 0) allocate(FRAME_BYTES + 8L * block.slots, block.line);
+        }
+
+        private void check(Stmt stmt) {
+            if (!started) {
+                started = true;
+                if (timed) deadline = System.nanoTime() + budget.millis * 1_000_000;
+            }
+            if (steps > budget.steps) {
+                throw new BudgetExceeded(BudgetExceeded.Limit.STEPS, Profiler.line(stmt),
+                        STR."Step budget of \{budget.steps} statements exceeded.");
+            }
+            if (timed && System.nanoTime() - deadline > 0) {
+                throw new BudgetExceeded(BudgetExceeded.Limit.TIME, Profiler.line(stmt),
+                        STR."Time budget of \{budget.millis} ms exceeded.");
+            }
+            nextCheck = Math.min(budget.steps, steps + CLOCK_INTERVAL);
+        }
+
+        // For a block's frame or a + expression's string.
+        private void allocate(long size, int line) {
+            bytes += size;
+            if (bytes > budget.bytes) {
+                throw new BudgetExceeded(BudgetExceeded.Limit.ALLOCATION, line,
+                        STR."Allocation budget of \{budget.bytes} bytes exceeded.");
+            }
+        }
+
+        // Before + joins two strings: a short result is copied into a String, a long one is a Rope node.
+        void concatenate(CharSequence left, CharSequence right, Expr.Binary node) {
+            long length = (long) left.length() + right.length();
+            // A Rope's characters are put together when it's printed, so none may be longer than the whole budget.
+            if (length > budget.bytes) {
+                throw new BudgetExceeded(BudgetExceeded.Limit.ALLOCATION, node.operator.line,
+                        STR."Allocation budget of \{budget.bytes} bytes exceeded by a string of \{length} characters.");
+            }
+            allocate(length < Rope.MIN_LENGTH ? length : ROPE_BYTES, node.operator.line);
+        }
+    }
+}
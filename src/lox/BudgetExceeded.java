@@ -0,0 +1,22 @@
+package lox;
+
+/**
+ * Thrown out of Interpreter.interpret() when a script goes over its Budget.
+ * Unlike a RuntimeError it isn't reported for the script. It ends the run,
+ * and whoever set the budget decides what to do.
+ */
+public final class BudgetExceeded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit { STEPS, TIME, ALLOCATION }
+
+    public final Limit limit;
+    // The line of the statement or operator where the limit was found to be passed.
+    public final int line;
+
+    BudgetExceeded(Limit limit, int line, String message) {
+        super(message);
+        this.limit = limit;
+        this.line = line;
+    }
+}
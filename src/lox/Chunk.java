@@ -0,0 +1,30 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class Chunk {
+    int[] code = new int[64];
+    // The source line of each entry in code, for runtime errors.
+    int[] lines = new int[64];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+    // Deepest the operand stack gets, so the VM can size it once up front.
+    int maxStack = 0;
+
+    void write(int value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = value;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+}
@@ -0,0 +1,163 @@
+package lox;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Converts each resolved statement and expression once into a composition of
+ * java.util.function closures, then runs those. Operators, literal values and
+ * variable slots are picked when compiling rather than on every evaluation.
+ * Semantics are shared with Interpreter through its static helpers.
+ */
+class ClosureCompiler {
+    final Environment globals = new Environment();
+    OutputSink out = OutputSink.stdout();
+
+    void interpret(List<Stmt> statements) {
+        Consumer<Environment> program = compileBlock(statements);
+        try {
+            program.accept(globals);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    private Consumer<Environment> compileBlock(List<Stmt> statements) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Consumer<Environment>[] body = new Consumer[statements.size()];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = compile(statements.get(i));
+        }
+        return env -> {
+            for (Consumer<Environment> statement : body) {
+                statement.accept(env);
+            }
+        };
+    }
+
+    private Consumer<Environment> compile(Stmt stmt) {
+        return switch (stmt) {
+            case Stmt.Expression expression -> {
+                Function<Environment, Object> expr = compile(expression.expression);
+                yield expr::apply;
+            }
+            case Stmt.Print print -> {
+                Function<Environment, Object> expr = compile(print.expression);
+                yield env -> out.printValue(expr.apply(env));
+            }
+            case Stmt.Var var -> {
+                Function<Environment, Object> initializer =
+                        var.initializer == null ? env -> null : compile(var.initializer);
+                Symbol name = var.name.symbol;
+                int slot = var.slot;
+                if (slot < 0) yield env -> globals.define(name, initializer.apply(env));
+                yield env -> env.defineAt(slot, initializer.apply(env));
+            }
+            case Stmt.Block block -> {
+                Consumer<Environment> body = compileBlock(block.statements);
+                int slots = block.slots;
+                // Nothing is declared in this block, so it can share the enclosing frame.
+                if (slots == 0) yield body;
+                yield env -> body.accept(new Environment(env, slots));
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+        };
+    }
+
+    private Function<Environment, Object> compile(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> {
+                Object value = literal.value;
+                yield env -> value;
+            }
+            case Expr.Grouping grouping -> compile(grouping.expression);
+            case Expr.Variable variable -> {
+                Token name = variable.name;
+                int depth = variable.depth;
+                int slot = variable.slot;
+                if (depth < 0) yield env -> globals.get(name);
+                yield env -> env.getAt(depth, slot);
+            }
+            case Expr.Assign assign -> {
+                Function<Environment, Object> value = compile(assign.value);
+                Token name = assign.name;
+                int depth = assign.depth;
+                int slot = assign.slot;
+                if (depth < 0) {
+                    yield env -> {
+                        Object result = value.apply(env);
+                        globals.assign(name, result);
+                        return result;
+                    };
+                }
+                yield env -> {
+                    Object result = value.apply(env);
+                    env.assignAt(depth, slot, result);
+                    return result;
+                };
+            }
+            case Expr.Unary unary -> compileUnary(unary);
+            case Expr.Binary binary -> compileBinary(binary);
+            default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+        };
+    }
+
+    private Function<Environment, Object> compileUnary(Expr.Unary expr) {
+        Function<Environment, Object> right = compile(expr.right);
+        Token operator = expr.operator;
+        return switch (operator.type) {
+            case TokenType.MINUS -> env -> {
+                Object value = right.apply(env);
+                Interpreter.checkNumberOperand(operator, value);
+                return -(double) value;
+            };
+            case TokenType.BANG -> env -> !Interpreter.isTruthy(right.apply(env));
+            default -> throw new IllegalArgumentException(STR."Unknown operator \{operator}");
+        };
+    }
+
+    private Function<Environment, Object> compileBinary(Expr.Binary expr) {
+        Function<Environment, Object> left = compile(expr.left);
+        Function<Environment, Object> right = compile(expr.right);
+        Token operator = expr.operator;
+        return switch (operator.type) {
+            case TokenType.PLUS -> env -> {
+                Object a = left.apply(env);
+                Object b = right.apply(env);
+                if (a instanceof Double x && b instanceof Double y) return x + y;
+                if (a instanceof CharSequence x && b instanceof CharSequence y) return Rope.concat(x, y);
+                throw new RuntimeError(operator, "Operands must both be numbers or strings");
+            };
+            case TokenType.MINUS -> numbers(left, right, operator, (a, b) -> a - b);
+            case TokenType.STAR -> numbers(left, right, operator, (a, b) -> a * b);
+            case TokenType.SLASH -> numbers(left, right, operator, (a, b) -> a / b);
+            case TokenType.GREATER -> numbers(left, right, operator, (a, b) -> a > b);
+            case TokenType.GREATER_EQUAL -> numbers(left, right, operator, (a, b) -> a >= b);
+            case TokenType.LESS -> numbers(left, right, operator, (a, b) -> a < b);
+            case TokenType.LESS_EQUAL -> numbers(left, right, operator, (a, b) -> a <= b);
+            // Compare bits, which is what Double.equals() does: NaN == NaN and 0 != -0.
+            case TokenType.EQUAL_EQUAL -> numbers(left, right, operator,
+                    (a, b) -> Double.doubleToLongBits(a) == Double.doubleToLongBits(b));
+            case TokenType.BANG_EQUAL -> numbers(left, right, operator,
+                    (a, b) -> Double.doubleToLongBits(a) != Double.doubleToLongBits(b));
+            default -> throw new IllegalArgumentException(STR."Unknown operator \{operator}");
+        };
+    }
+
+    private interface NumberOperator {
+        Object apply(double left, double right);
+    }
+
+    // Both operands are evaluated before either is checked, as in the Interpreter.
+    private static Function<Environment, Object> numbers(Function<Environment, Object> left,
+                                                         Function<Environment, Object> right,
+                                                         Token operator, NumberOperator op) {
+        return env -> {
+            Object a = left.apply(env);
+            Object b = right.apply(env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return op.apply((double) a, (double) b);
+        };
+    }
+}
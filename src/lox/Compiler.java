@@ -0,0 +1,216 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers the parsed statements into a Chunk of bytecode for the VM. Locals live
+ * on the VM's operand stack, so each one is given the stack slot it occupies.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final Chunk chunk = new Chunk();
+    private final Map<Object, Integer> constants = new HashMap<>();
+    // The stack slot of each local, one map per enclosing block, innermost last.
+    private final List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+    private int localCount = 0;
+    private int stackDepth = 0;
+    // Line of the last token seen, for instructions that don't have one of their own.
+    private int line = 1;
+
+    Chunk compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(OpCode.RETURN);
+        return chunk;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        pop(1);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        pop(1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        // The initializer is compiled before the local exists, so it still sees any outer variable.
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+            push();
+        }
+
+        if (scopes.isEmpty()) {
+            emit(OpCode.DEFINE_GLOBAL, constant(stmt.name.symbol));
+            pop(1);
+            return null;
+        }
+
+        // Redeclaring a name in the same block reuses its slot, like the tree-walker does.
+        Map<Symbol, Integer> slots = scopes.getLast();
+        Integer slot = slots.get(stmt.name.symbol);
+        if (slot != null) {
+            emit(OpCode.SET_LOCAL, slot);
+            emit(OpCode.POP);
+            pop(1);
+            return null;
+        }
+        // Otherwise the initializer's value stays on the stack as the local's slot.
+        slots.put(stmt.name.symbol, localCount++);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.add(new HashMap<>());
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+
+        int count = scopes.removeLast().size();
+        localCount -= count;
+        if (count > 0) {
+            emit(OpCode.POPN, count);
+            pop(count);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            emit(OpCode.TRUE);
+        } else if (expr.value.equals(false)) {
+            emit(OpCode.FALSE);
+        } else {
+            emit(OpCode.CONSTANT, constant(expr.value));
+        }
+        push();
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case TokenType.MINUS -> emit(OpCode.NEGATE);
+            case TokenType.BANG -> emit(OpCode.NOT);
+            default -> {} // Unreachable
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case TokenType.GREATER -> emit(OpCode.GREATER);
+            case TokenType.GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+            case TokenType.LESS -> emit(OpCode.LESS);
+            case TokenType.LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+            case TokenType.BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+            case TokenType.EQUAL_EQUAL -> emit(OpCode.EQUAL);
+            case TokenType.MINUS -> emit(OpCode.SUBTRACT);
+            case TokenType.STAR -> emit(OpCode.MULTIPLY);
+            case TokenType.SLASH -> emit(OpCode.DIVIDE);
+            case TokenType.PLUS -> emit(OpCode.ADD);
+            default -> {} // Unreachable
+        }
+        pop(1);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        int slot = resolveLocal(expr.name);
+        if (slot >= 0) {
+            emit(OpCode.GET_LOCAL, slot);
+        } else {
+            emit(OpCode.GET_GLOBAL, constant(expr.name.symbol));
+        }
+        push();
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        int slot = resolveLocal(expr.name);
+        if (slot >= 0) {
+            emit(OpCode.SET_LOCAL, slot);
+        } else {
+            emit(OpCode.SET_GLOBAL, constant(expr.name.symbol));
+        }
+        return null;
+    }
+
+    private int resolveLocal(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name.symbol);
+            if (slot != null) return slot;
+        }
+        return -1;
+    }
+
+    private int constant(Object value) {
+        Integer index = constants.get(value);
+        if (index == null) {
+            index = chunk.addConstant(value);
+            constants.put(value, index);
+        }
+        return index;
+    }
+
+    private void emit(int op) {
+        chunk.write(op, line);
+    }
+
+    private void emit(int op, int operand) {
+        chunk.write(op, line);
+        chunk.write(operand, line);
+    }
+
+    private void push() {
+        stackDepth++;
+        if (stackDepth > chunk.maxStack) chunk.maxStack = stackDepth;
+    }
+
+    private void pop(int count) {
+        stackDepth -= count;
+    }
+}
@@ -0,0 +1,56 @@
+package lox;
+
+/**
+ * One isolated place to run Programs when embedding Lox: its own interpreter,
+ * globals, output and Diagnostics. Contexts share nothing, so any number of
+ * them can run at once, each on its own thread. A single Context runs one
+ * program at a time; later runs see the globals the earlier ones left, like
+ * lines in the REPL. Each Program has its own symbol table, so the globals
+ * are indexed again, by name, when the next program is a different one.
+ *
+ *     StringBuilder output = new StringBuilder();
+ *     Context context = new Context(output);
+ *     int status = context.run(Program.parse("print 1 + 2;"));
+ */
+public final class Context {
+    private final Interpreter interpreter = new Interpreter();
+    private final Diagnostics diagnostics = new Diagnostics();
+
+    // Print statements append to out, line by line.
+    public Context(Appendable out) {
+        interpreter.out = OutputSink.of(out);
+    }
+
+    // Returns the status the command line would exit with: 0, 65 for syntax errors, or 70 for a runtime error.
+    public int run(Program program) {
+        if (!program.errors().isEmpty()) {
+            diagnostics.addAll(program.errors());
+            return 65;
+        }
+        int before = diagnostics.size();
+        interpreter.globals.bind(program.symbols());
+        try {
+            Lox.reportingTo(diagnostics, () -> {
+                interpreter.interpret(program.statements());
+                return null;
+            });
+        } finally {
+            interpreter.out.flush();
+        }
+        return diagnostics.size() > before ? 70 : 0;
+    }
+
+    // Runs program within budget. Throws BudgetExceeded if it goes over, after which the context can still be used.
+    public int run(Program program, Budget budget) {
+        interpreter.limit(budget);
+        try {
+            return run(program);
+        } finally {
+            interpreter.limit(null);
+        }
+    }
+
+    public Diagnostics diagnostics() {
+        return diagnostics;
+    }
+}
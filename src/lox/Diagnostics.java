@@ -0,0 +1,105 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The syntax and runtime errors of one run, and whether its Budget stopped
+ * it. The command line prints them as they come (syntax errors with the
+ * output, the others on stderr); a Context or a front-end worker collects
+ * them instead. Lox.error() and
+ * Lox.runtimeError() report to whichever Diagnostics is bound to the thread.
+ */
+public final class Diagnostics {
+    public enum Kind { SYNTAX, RUNTIME, BUDGET }
+
+    public record Diagnostic(Kind kind, int line, String where, String message) {
+        // The same text the command line prints.
+        @Override
+        public String toString() {
+            if (kind == Kind.SYNTAX) return STR."[\{line}] Error \{where}: \{message}";
+            if (line < 0) return message;
+            return STR."\{message} \n[line \{line}]";
+        }
+    }
+
+    // Null when collecting.
+    private final OutputSink out;
+    private final List<Diagnostic> collected = new ArrayList<>();
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    // Collects errors without printing them.
+    public Diagnostics() {
+        this(null);
+    }
+
+    private Diagnostics(OutputSink out) {
+        this.out = out;
+    }
+
+    // Prints errors as the command line does, keeping only the flags.
+    static Diagnostics printing(OutputSink out) {
+        return new Diagnostics(out);
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    // What has been collected, in the order it was reported.
+    public List<Diagnostic> all() {
+        return List.copyOf(collected);
+    }
+
+    int size() {
+        return collected.size();
+    }
+
+    void syntaxError(int line, String where, String message) {
+        hadError = true;
+        Diagnostic diagnostic = new Diagnostic(Kind.SYNTAX, line, where, message);
+        if (out != null) {
+            out.println(diagnostic.toString());
+        } else {
+            collected.add(diagnostic);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        LoxEvents.RuntimeError.sample(error);
+        failed(new Diagnostic(Kind.RUNTIME, error.line, "", error.getMessage()));
+    }
+
+    // Reported like a runtime error, and exits with 70 the same way.
+    void budgetExceeded(BudgetExceeded error) {
+        failed(new Diagnostic(Kind.BUDGET, error.line, "", error.getMessage()));
+    }
+
+    private void failed(Diagnostic diagnostic) {
+        hadRuntimeError = true;
+        if (out != null) {
+            // Whatever the script printed before the error comes out first.
+            out.flush();
+            System.err.println(diagnostic);
+        } else {
+            collected.add(diagnostic);
+        }
+    }
+
+    // For a program's syntax errors, which are found once and reported to every context that runs it.
+    void addAll(List<Diagnostic> diagnostics) {
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.kind() == Kind.SYNTAX) {
+                hadError = true;
+            } else {
+                hadRuntimeError = true;
+            }
+            collected.add(diagnostic);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A source being edited, kept scanned and parsed, for editors and tools that
+ * want the tree after every change. Its statements and syntax errors are
+ * always what scanning and parsing the whole text again would give.
+ *
+ * The text is kept as segments of whole lines, each holding the top-level
+ * statements that start in it. An edit only scans and parses the segments
+ * it touches. If the new parse doesn't end exactly where the next segment
+ * begins, it takes in the next segment too and tries again. Once it does,
+ * everything after it would scan and parse just as before, so it's kept.
+ *
+ * The segments are the nodes of a treap in text order. Each node also has the
+ * totals for its subtree: segments, characters, lines, statements and errors.
+ * Finding the segment at an offset, or the line a segment starts on, takes
+ * time logarithmic in the number of segments, and so does replacing some of
+ * them. An edit that adds or removes lines moves every statement after it.
+ * A segment's statements are only copied onto their new lines when one of
+ * them is next read, so neither an edit nor reading the tree after it
+ * depends on how long the document is.
+ */
+final class Document {
+    private static final class Segment {
+        final String text;
+        final int newlines;
+        // A null for each declaration with a syntax error, as Parser.parse() gives.
+        List<Stmt> statements;
+        List<Diagnostics.Diagnostic> scanErrors;
+        List<Diagnostics.Diagnostic> parseErrors;
+        // The line the statements and errors were made for.
+        int parsedLine;
+
+        // The treap: children, the heap priority, and the totals of the subtree.
+        Segment left;
+        Segment right;
+        int priority;
+        final int[] totals = new int[MEASURES];
+
+        Segment(String text, int line, List<Stmt> statements,
+                List<Diagnostics.Diagnostic> scanErrors, List<Diagnostics.Diagnostic> parseErrors) {
+            this.text = text;
+            this.newlines = (int) text.chars().filter(c -> c == '\n').count();
+            this.statements = statements;
+            this.scanErrors = scanErrors;
+            this.parseErrors = parseErrors;
+            this.parsedLine = line;
+        }
+
+        int own(int measure) {
+            return switch (measure) {
+                case SEGMENTS -> 1;
+                case CHARACTERS -> text.length();
+                case LINES -> newlines;
+                case STATEMENTS -> statements.size();
+                case SCAN_ERRORS -> scanErrors.size();
+                default -> parseErrors.size();
+            };
+        }
+    }
+
+    // What segments are counted by, for the totals and for locate().
+    private static final int SEGMENTS = 0, CHARACTERS = 1, LINES = 2, STATEMENTS = 3, SCAN_ERRORS = 4, PARSE_ERRORS = 5;
+    private static final int MEASURES = 6;
+
+    // A segment found by locate(): its index, the offset and line it starts
+    // at, and how far into it the unit that was looked for is.
+    private record Location(Segment segment, int index, int start, int line, int within) {}
+
+    // The names typed into this document, so that they don't add to the command line's.
+    private final SymbolTable symbols = new SymbolTable();
+    // Priorities only need to be random, not unpredictable.
+    private final Random priorities = new Random(0);
+    private Segment root;
+    // How many characters the last edit scanned, to see that edits stay local.
+    int rescanned;
+
+    Document(String text) {
+        root = build(parse(text, 1, true));
+        rescanned = text.length();
+    }
+
+    // Replaces removed characters at offset with inserted.
+    void edit(int offset, int removed, String inserted) {
+        int length = total(root, CHARACTERS);
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException(STR."Edit of \{removed} at \{offset} in \{length} characters");
+        }
+        int first = find(offset);
+        int last = removed == 0 ? first : find(offset + removed - 1);
+        // After a syntax error the parser skips to the next token that can start a declaration,
+        // so where a failed declaration ends depends on what follows it. It's parsed again too.
+        int before = first;
+        while (before > 0 && segment(before - 1).statements.isEmpty()) before--;
+        if (before > 0 && segment(before - 1).statements.getLast() == null) first = before - 1;
+        Location start = locate(SEGMENTS, first);
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i <= last; i++) {
+            text.append(segment(i).text);
+        }
+        text.replace(offset - start.start(), offset - start.start() + removed, inserted);
+
+        int count = total(root, SEGMENTS);
+        List<Segment> parsed;
+        while ((parsed = parse(text.toString(), start.line(), last == count - 1)) == null) {
+            text.append(segment(++last).text);
+        }
+        rescanned = text.length();
+
+        Segment[] rest = split(root, last + 1);
+        Segment[] kept = split(rest[0], first);
+        root = merge(merge(kept[0], build(parsed)), rest[1]);
+        if (root == null) root = build(List.of(new Segment("", 1, List.of(), List.of(), List.of())));
+    }
+
+    /**
+     * The top-level statements, as a view rather than a copy. Each is found,
+     * and moved to the line it's on now, only when it's read.
+     */
+    List<Stmt> statements() {
+        return new AbstractList<>() {
+            @Override
+            public Stmt get(int index) {
+                Location at = locate(STATEMENTS, checkIndex(index, size()));
+                return current(at).statements.get(at.within());
+            }
+
+            @Override
+            public int size() {
+                return total(root, STATEMENTS);
+            }
+        };
+    }
+
+    // In the order a full parse reports them: the scanner's errors, then the parser's. A view, like statements().
+    List<Diagnostics.Diagnostic> errors() {
+        return new AbstractList<>() {
+            @Override
+            public Diagnostics.Diagnostic get(int index) {
+                int scanned = total(root, SCAN_ERRORS);
+                if (checkIndex(index, size()) < scanned) {
+                    Location at = locate(SCAN_ERRORS, index);
+                    return current(at).scanErrors.get(at.within());
+                }
+                Location at = locate(PARSE_ERRORS, index - scanned);
+                return current(at).parseErrors.get(at.within());
+            }
+
+            @Override
+            public int size() {
+                return total(root, SCAN_ERRORS) + total(root, PARSE_ERRORS);
+            }
+        };
+    }
+
+    String text() {
+        StringBuilder text = new StringBuilder(total(root, CHARACTERS));
+        appendText(root, text);
+        return text.toString();
+    }
+
+    private static void appendText(Segment segment, StringBuilder text) {
+        if (segment == null) return;
+        appendText(segment.left, text);
+        text.append(segment.text);
+        appendText(segment.right, text);
+    }
+
+    // The index of the segment holding offset, or of the last one for the end of the text.
+    private int find(int offset) {
+        if (offset == total(root, CHARACTERS)) return total(root, SEGMENTS) - 1;
+        return locate(CHARACTERS, offset).index();
+    }
+
+    private Segment segment(int index) {
+        return locate(SEGMENTS, index).segment();
+    }
+
+    // The segment holding the nth unit of measure, counting from 0.
+    private Location locate(int measure, int n) {
+        Segment node = root;
+        int index = 0;
+        int start = 0;
+        int line = 1;
+        while (true) {
+            int left = total(node.left, measure);
+            if (n < left) {
+                node = node.left;
+                continue;
+            }
+            n -= left;
+            index += total(node.left, SEGMENTS);
+            start += total(node.left, CHARACTERS);
+            line += total(node.left, LINES);
+            if (n < node.own(measure)) return new Location(node, index, start, line, n);
+            n -= node.own(measure);
+            index++;
+            start += node.text.length();
+            line += node.newlines;
+            node = node.right;
+        }
+    }
+
+    // The segment, with its statements and errors on the line it's on now.
+    private static Segment current(Location at) {
+        Segment segment = at.segment();
+        int delta = at.line() - segment.parsedLine;
+        if (delta != 0) {
+            List<Stmt> statements = new ArrayList<>(segment.statements.size());
+            for (Stmt statement : segment.statements) {
+                statements.add(statement == null ? null : shift(statement, delta));
+            }
+            segment.statements = statements;
+            segment.scanErrors = shift(segment.scanErrors, delta);
+            segment.parseErrors = shift(segment.parseErrors, delta);
+            segment.parsedLine = at.line();
+        }
+        return segment;
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(STR."Index \{index} of \{size}");
+        return index;
+    }
+
+    private static int total(Segment segment, int measure) {
+        return segment == null ? 0 : segment.totals[measure];
+    }
+
+    private static Segment update(Segment segment) {
+        for (int measure = 0; measure < MEASURES; measure++) {
+            segment.totals[measure] = total(segment.left, measure) + segment.own(measure) + total(segment.right, measure);
+        }
+        return segment;
+    }
+
+    private Segment build(List<Segment> segments) {
+        Segment tree = null;
+        for (Segment segment : segments) {
+            segment.priority = priorities.nextInt();
+            tree = merge(tree, update(segment));
+        }
+        return tree;
+    }
+
+    // Everything in a, then everything in b.
+    private static Segment merge(Segment a, Segment b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return update(a);
+        }
+        b.left = merge(a, b.left);
+        return update(b);
+    }
+
+    // The first count segments, and the rest.
+    private static Segment[] split(Segment tree, int count) {
+        if (tree == null) return new Segment[2];
+        int left = total(tree.left, SEGMENTS);
+        if (count <= left) {
+            Segment[] parts = split(tree.left, count);
+            tree.left = parts[1];
+            parts[1] = update(tree);
+            return parts;
+        }
+        Segment[] parts = split(tree.right, count - left - 1);
+        tree.right = parts[0];
+        parts[0] = update(tree);
+        return parts;
+    }
+
+    // Scans and parses text, which starts at the beginning of a line. Unless it's the end of
+    // the document, returns null if the scan or the parse would have gone on past the text.
+    private List<Segment> parse(String text, int line, boolean last) {
+        if (text.isEmpty() && !last) return List.of();
+        Diagnostics diagnostics = new Diagnostics();
+        return Lox.reportingTo(diagnostics, () -> split(text, line, last, diagnostics));
+    }
+
+    private List<Segment> split(String text, int line, boolean last, Diagnostics diagnostics) {
+        List<Token> tokens = new Scanner(text, line, symbols).scanTokens();
+        int scanned = diagnostics.size();
+        // A line or a string that doesn't end by the end of the text carries on into the next segment.
+        if (!last && (!text.endsWith("\n") || scanned > 0 && unterminated(diagnostics.all().getLast()))) {
+            return null;
+        }
+
+        List<Integer> lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') lineStarts.add(i + 1);
+        }
+
+        // Each segment's offset, first line, statements, and the end of its parse errors.
+        List<int[]> bounds = new ArrayList<>();
+        List<List<Stmt>> statements = new ArrayList<>();
+        List<Stmt> current = new ArrayList<>();
+        int[] read = {0};
+        Parser parser = new Parser(TokenCursor.of(() -> tokens.get(read[0]++)));
+        int segmentStart = 0;
+        int segmentLine = line;
+        int previousEnd = -1;
+        while (parser.hasNext()) {
+            // A new segment can start on any line after the last one the previous declaration read.
+            int startLine = startLine(tokens.get(read[0] - 1));
+            if (!current.isEmpty() && startLine > previousEnd) {
+                bounds.add(new int[] {segmentStart, segmentLine, diagnostics.size()});
+                statements.add(current);
+                current = new ArrayList<>();
+                segmentLine = previousEnd + 1;
+                segmentStart = lineStarts.get(segmentLine - line);
+            }
+            current.add(parser.next());
+            previousEnd = tokens.get(read[0] - 2).line;
+        }
+        // After a syntax error the parser skips ahead, maybe past the end of the text.
+        if (!last && !current.isEmpty() && current.getLast() == null) return null;
+        bounds.add(new int[] {segmentStart, segmentLine, diagnostics.size()});
+        statements.add(current);
+
+        List<Diagnostics.Diagnostic> errors = diagnostics.all();
+        List<Segment> segments = new ArrayList<>();
+        int parseErrors = scanned;
+        int scanErrors = 0;
+        for (int i = 0; i < bounds.size(); i++) {
+            int[] segment = bounds.get(i);
+            boolean end = i == bounds.size() - 1;
+            int textEnd = end ? text.length() : bounds.get(i + 1)[0];
+            int nextLine = end ? Integer.MAX_VALUE : bounds.get(i + 1)[1];
+            // The scanner's errors go with the segment their line is in.
+            int scanEnd = scanErrors;
+            while (scanEnd < scanned && errors.get(scanEnd).line() < nextLine) scanEnd++;
+            segments.add(new Segment(text.substring(segment[0], textEnd), segment[1], statements.get(i),
+                    errors.subList(scanErrors, scanEnd), errors.subList(parseErrors, segment[2])));
+            scanErrors = scanEnd;
+            parseErrors = segment[2];
+        }
+        return segments;
+    }
+
+    private static boolean unterminated(Diagnostics.Diagnostic error) {
+        return error.message().equals("Unterminated string.");
+    }
+
+    // A token's line is where it ends. Only a string can start on an earlier one.
+    private static int startLine(Token token) {
+        if (token.type != TokenType.STRING) return token.line;
+        return token.line - (int) token.lexeme.chars().filter(c -> c == '\n').count();
+    }
+
+    private static List<Diagnostics.Diagnostic> shift(List<Diagnostics.Diagnostic> errors, int delta) {
+        List<Diagnostics.Diagnostic> shifted = new ArrayList<>(errors.size());
+        for (Diagnostics.Diagnostic error : errors) {
+            shifted.add(new Diagnostics.Diagnostic(error.kind(), error.line() + delta, error.where(), error.message()));
+        }
+        return shifted;
+    }
+
+    private static Stmt shift(Stmt stmt, int delta) {
+        return switch (stmt) {
+            case Stmt.Expression expression -> new Stmt.Expression(shift(expression.expression, delta), expression.line + delta);
+            case Stmt.Print print -> new Stmt.Print(shift(print.expression, delta), print.line + delta);
+            case Stmt.Var var -> new Stmt.Var(shift(var.name, delta),
+                    var.initializer == null ? null : shift(var.initializer, delta));
+            case Stmt.Block block -> {
+                List<Stmt> statements = new ArrayList<>(block.statements.size());
+                for (Stmt statement : block.statements) {
+                    statements.add(statement == null ? null : shift(statement, delta));
+                }
+                yield new Stmt.Block(statements, block.line + delta);
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+        };
+    }
+
+    private static Expr shift(Expr expr, int delta) {
+        return switch (expr) {
+            // No line in a literal, so the same node will do.
+            case Expr.Literal literal -> literal;
+            case Expr.Grouping grouping -> new Expr.Grouping(shift(grouping.expression, delta));
+            case Expr.Variable variable -> new Expr.Variable(shift(variable.name, delta));
+            case Expr.Assign assign -> new Expr.Assign(shift(assign.name, delta), shift(assign.value, delta));
+            case Expr.Unary unary -> new Expr.Unary(shift(unary.operator, delta), shift(unary.right, delta));
+            case Expr.Binary binary -> new Expr.Binary(shift(binary.left, delta), shift(binary.operator, delta),
+                    shift(binary.right, delta));
+            default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+        };
+    }
+
+    private static Token shift(Token token, int delta) {
+        return new Token(token.type, token.lexeme, token.literal, token.line + delta, token.symbol);
+    }
+}
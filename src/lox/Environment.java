@@ -1,40 +1,126 @@
 package lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Environment {
+    // Marks a global that hasn't been defined, since nil is a value like any other.
+    private static final Object UNDEFINED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Globals are indexed by the ids of symbols's symbols, and grow as the REPL defines new ones.
+    // Block scopes are resolved ahead of time, so they are plain slot arrays.
+    private SymbolTable symbols;
+    private Object[] values;
+    private final Object[] slots;
+    // Globals whose names aren't in symbols, kept by name until a program that uses them is bound.
+    private Map<String, Object> unbound = null;
 
     Environment() {
+        this(SymbolTable.SHARED);
+    }
+
+    Environment(SymbolTable symbols) {
         enclosing = null;
+        this.symbols = symbols;
+        values = new Object[0];
+        slots = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        values = null;
+        slots = new Object[size];
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    // Indexes the globals by another table's ids, for a Context about to run a Program
+    // parsed with that table. Globals it has no name for wait, by name, for a later one.
+    void bind(SymbolTable next) {
+        if (next == symbols) return;
+        Map<String, Object> defined = unbound != null ? unbound : new HashMap<>();
+        for (Map.Entry<Symbol, Object> global : definedGlobals().entrySet()) {
+            defined.put(global.getKey().name, global.getValue());
+        }
+        symbols = next;
+        values = new Object[0];
+        unbound = null;
+        for (Map.Entry<String, Object> global : defined.entrySet()) {
+            Symbol name = next.lookup(global.getKey());
+            if (name != null) {
+                define(name, global.getValue());
+            } else {
+                if (unbound == null) unbound = new HashMap<>();
+                unbound.put(global.getKey(), global.getValue());
+            }
+        }
+    }
+
+    void define(Symbol name, Object value) {
+        if (name.id >= values.length) {
+            int length = values.length;
+            // At least double, since names may be interned and defined one at a time.
+            values = Arrays.copyOf(values, Math.max(Math.max(name.id + 1, length * 2), symbols.count()));
+            Arrays.fill(values, length, values.length, UNDEFINED);
+        }
+        values[name.id] = value;
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) return values.get(name.lexeme);
-        if (enclosing != null) return enclosing.get(name);
-        throw new RuntimeError(name, STR."Undefined variable '\{name.lexeme}'.");
+        return get(name.symbol, name.line);
+    }
+
+    // For callers that only kept the line of the name, not its token.
+    Object get(Symbol name, int line) {
+        int id = name.id;
+        if (id < values.length && values[id] != UNDEFINED) return values[id];
+        throw new RuntimeError(line, STR."Undefined variable '\{name.name}'.");
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        assign(name.symbol, name.line, value);
+    }
+
+    void assign(Symbol name, int line, Object value) {
+        int id = name.id;
+        if (id < values.length && values[id] != UNDEFINED) {
+            values[id] = value;
             return;
         }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        throw new RuntimeError(line, STR."Undefined variable '\{name.name}'.");
+    }
+
+    // The globals that have been defined, in the order their names were first seen.
+    Map<Symbol, Object> definedGlobals() {
+        Map<Symbol, Object> defined = new LinkedHashMap<>();
+        for (int id = 0; id < values.length; id++) {
+            if (values[id] != UNDEFINED) defined.put(symbols.byId(id), values[id]);
         }
-        throw new RuntimeError(name, STR."Undefined variable '\{name.lexeme}'.");
+        return defined;
+    }
+
+    void defineAt(int slot, Object value) {
+        slots[slot] = value;
     }
 
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
 }
@@ -26,6 +26,7 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    int state;
   }
   static class Grouping extends Expr {
     Grouping(Expr expression) {
@@ -64,6 +65,7 @@ abstract class Expr {
 
     final Token operator;
     final Expr right;
+    int state;
   }
   static class Variable extends Expr {
     Variable(Token name) {
@@ -76,6 +78,8 @@ abstract class Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot = -1;
   }
   static class Assign extends Expr {
     Assign(Token name, Expr value) {
@@ -90,6 +94,8 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    int depth = -1;
+    int slot = -1;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
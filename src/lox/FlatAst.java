@@ -0,0 +1,333 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The AST flattened into int arrays instead of linked Expr and Stmt objects.
+ * Each node is four ints in nodes: its kind and three operands, which are the
+ * indexes of child nodes, constants or resolved slots depending on the kind.
+ * Children are always stored before their parent. A block's statements are a
+ * run of node indexes in lists. Lines are kept alongside, for the nodes that
+ * can raise a runtime error.
+ */
+final class FlatAst {
+    static final int LITERAL = 0;        // constant, or -1 for nil
+    static final int VARIABLE = 1;       // name constant, depth, slot
+    static final int ASSIGN = 2;         // VARIABLE target, value
+    static final int NEGATE = 3;         // operand
+    static final int NOT = 4;            // operand
+    static final int ADD = 5;            // left, right (and so on for each binary operator)
+    static final int SUBTRACT = 6;
+    static final int MULTIPLY = 7;
+    static final int DIVIDE = 8;
+    static final int GREATER = 9;
+    static final int GREATER_EQUAL = 10;
+    static final int LESS = 11;
+    static final int LESS_EQUAL = 12;
+    static final int EQUAL = 13;
+    static final int NOT_EQUAL = 14;
+    static final int EXPRESSION = 15;    // expression
+    static final int PRINT = 16;         // expression
+    static final int VAR = 17;           // name constant, initializer or -1, slot
+    static final int BLOCK = 18;         // first index in lists, statement count, frame size
+    static final int GROUPING = 19;      // VARIABLE in parentheses, which can't be assigned to
+
+    static final int KIND = 0;
+    static final int A = 1;
+    static final int B = 2;
+    static final int C = 3;
+    private static final int STRIDE = 4;
+
+    int[] nodes;
+    int[] lines;
+    int count = 0;
+    int[] lists;
+    private int listCount = 0;
+    final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+    // Statements of the blocks still being built, innermost last.
+    private int[] pending = new int[64];
+    private int pendingCount = 0;
+    // The top-level statements, once finish() has been called.
+    int programStart = 0;
+    int programCount = 0;
+
+    FlatAst() {
+        this(1024);
+    }
+
+    // Room for capacity nodes before having to grow.
+    FlatAst(int capacity) {
+        capacity = Math.max(capacity, 16);
+        nodes = new int[STRIDE * capacity];
+        lines = new int[capacity];
+        lists = new int[capacity];
+    }
+
+    // Converts a parsed (but not yet resolved or optimized) program.
+    static FlatAst of(List<Stmt> statements) {
+        FlatAst ast = new FlatAst();
+        int mark = ast.mark();
+        for (Stmt statement : statements) {
+            ast.add(ast.convert(statement));
+        }
+        ast.finish(mark);
+        return ast;
+    }
+
+    private int convert(Stmt stmt) {
+        return switch (stmt) {
+            case Stmt.Expression expression -> node(EXPRESSION, 0, convert(expression.expression), 0, 0);
+            case Stmt.Print print -> node(PRINT, 0, convert(print.expression), 0, 0);
+            case Stmt.Var var -> {
+                int name = constant(var.name.symbol);
+                int initializer = var.initializer == null ? -1 : convert(var.initializer);
+                yield var(name, var.name.line, initializer);
+            }
+            case Stmt.Block block -> {
+                int mark = mark();
+                for (Stmt statement : block.statements) {
+                    add(convert(statement));
+                }
+                yield block(mark);
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+        };
+    }
+
+    private int convert(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal(literal.value);
+            case Expr.Grouping grouping -> grouping(convert(grouping.expression));
+            case Expr.Variable variable -> variable(variable.name.symbol, variable.name.line);
+            case Expr.Assign assign -> {
+                int target = variable(assign.name.symbol, assign.name.line);
+                yield assign(target, convert(assign.value));
+            }
+            case Expr.Unary unary -> unary(unary.operator.type, unary.operator.line, convert(unary.right));
+            case Expr.Binary binary -> {
+                int left = convert(binary.left);
+                int right = convert(binary.right);
+                yield binary(binary.operator.type, binary.operator.line, left, right);
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+        };
+    }
+
+    int literal(Object value) {
+        return node(LITERAL, 0, value == null ? -1 : constant(value), 0, 0);
+    }
+
+    int variable(Symbol name, int line) {
+        return node(VARIABLE, line, constant(name), -1, -1);
+    }
+
+    // Only a variable needs to remember its parentheses. Anything else already isn't an assignment target.
+    int grouping(int expression) {
+        if (kind(expression) != VARIABLE) return expression;
+        return node(GROUPING, 0, expression, 0, 0);
+    }
+
+    int assign(int target, int value) {
+        return node(ASSIGN, lines[target], target, value, 0);
+    }
+
+    int unary(TokenType operator, int line, int operand) {
+        int kind = operator == TokenType.MINUS ? NEGATE : NOT;
+        return node(kind, line, operand, 0, 0);
+    }
+
+    int binary(TokenType operator, int line, int left, int right) {
+        int kind = switch (operator) {
+            case PLUS -> ADD;
+            case MINUS -> SUBTRACT;
+            case STAR -> MULTIPLY;
+            case SLASH -> DIVIDE;
+            case GREATER -> GREATER;
+            case GREATER_EQUAL -> GREATER_EQUAL;
+            case LESS -> LESS;
+            case LESS_EQUAL -> LESS_EQUAL;
+            case EQUAL_EQUAL -> EQUAL;
+            case BANG_EQUAL -> NOT_EQUAL;
+            default -> throw new IllegalArgumentException(STR."Unknown operator \{operator}");
+        };
+        return node(kind, line, left, right, 0);
+    }
+
+    int expression(int expression) {
+        return node(EXPRESSION, 0, expression, 0, 0);
+    }
+
+    int print(int expression) {
+        return node(PRINT, 0, expression, 0, 0);
+    }
+
+    int var(int name, int line, int initializer) {
+        return node(VAR, line, name, initializer, -1);
+    }
+
+    // Starts collecting the statements of a block or of the whole program.
+    int mark() {
+        return pendingCount;
+    }
+
+    void add(int statement) {
+        if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = statement;
+    }
+
+    void discard(int mark) {
+        pendingCount = mark;
+    }
+
+    int block(int mark) {
+        int start = list(mark);
+        return node(BLOCK, 0, start, listCount - start, 0);
+    }
+
+    void finish(int mark) {
+        programStart = list(mark);
+        programCount = listCount - programStart;
+    }
+
+    int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int list(int mark) {
+        int length = pendingCount - mark;
+        if (listCount + length > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listCount + length));
+        }
+        System.arraycopy(pending, mark, lists, listCount, length);
+        pendingCount = mark;
+        int start = listCount;
+        listCount += length;
+        return start;
+    }
+
+    private int node(int kind, int line, int a, int b, int c) {
+        if (count == lines.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        int offset = count * STRIDE;
+        nodes[offset + KIND] = kind;
+        nodes[offset + A] = a;
+        nodes[offset + B] = b;
+        nodes[offset + C] = c;
+        lines[count] = line;
+        return count++;
+    }
+
+    int kind(int node) {
+        return nodes[node * STRIDE + KIND];
+    }
+
+    int a(int node) {
+        return nodes[node * STRIDE + A];
+    }
+
+    int b(int node) {
+        return nodes[node * STRIDE + B];
+    }
+
+    int c(int node) {
+        return nodes[node * STRIDE + C];
+    }
+
+    // Whether the two encode the same program, node for node.
+    boolean sameAs(FlatAst other) {
+        return count == other.count
+                && Arrays.equals(nodes, 0, count * STRIDE, other.nodes, 0, count * STRIDE)
+                && Arrays.equals(lines, 0, count, other.lines, 0, count)
+                && Arrays.equals(lists, 0, listCount, other.lists, 0, other.listCount)
+                && constants.equals(other.constants)
+                && programStart == other.programStart
+                && programCount == other.programCount;
+    }
+
+    /**
+     * Gives each local the same depth and slot the Resolver would, writing them
+     * into the VARIABLE and VAR nodes, and each block its frame size.
+     */
+    void resolve() {
+        List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+        List<Boolean> frames = new ArrayList<>();
+        for (int i = 0; i < programCount; i++) {
+            resolve(lists[programStart + i], scopes, frames);
+        }
+    }
+
+    private void resolve(int node, List<Map<Symbol, Integer>> scopes, List<Boolean> frames) {
+        int offset = node * STRIDE;
+        switch (nodes[offset + KIND]) {
+            case LITERAL -> {}
+            case VARIABLE -> {
+                Symbol name = (Symbol) constants.get(nodes[offset + A]);
+                int depth = 0;
+                for (int i = scopes.size() - 1; i >= 0; i--) {
+                    Integer slot = scopes.get(i).get(name);
+                    if (slot != null) {
+                        nodes[offset + B] = depth;
+                        nodes[offset + C] = slot;
+                        return;
+                    }
+                    if (frames.get(i)) depth++;
+                }
+            }
+            case ASSIGN -> {
+                resolve(nodes[offset + B], scopes, frames);
+                resolve(nodes[offset + A], scopes, frames);
+            }
+            case VAR -> {
+                // The initializer runs before the name exists, so it still sees any outer variable.
+                if (nodes[offset + B] >= 0) resolve(nodes[offset + B], scopes, frames);
+                if (scopes.isEmpty()) return;
+                Map<Symbol, Integer> slots = scopes.getLast();
+                Symbol name = (Symbol) constants.get(nodes[offset + A]);
+                Integer slot = slots.get(name);
+                if (slot == null) {
+                    slot = slots.size();
+                    slots.put(name, slot);
+                }
+                nodes[offset + C] = slot;
+            }
+            case BLOCK -> {
+                int start = nodes[offset + A];
+                int length = nodes[offset + B];
+                boolean declares = false;
+                for (int i = start; i < start + length && !declares; i++) {
+                    declares = nodes[lists[i] * STRIDE + KIND] == VAR;
+                }
+
+                Map<Symbol, Integer> slots = new HashMap<>();
+                scopes.add(slots);
+                frames.add(declares);
+                for (int i = start; i < start + length; i++) {
+                    resolve(lists[i], scopes, frames);
+                }
+                scopes.removeLast();
+                frames.removeLast();
+                // One slot per distinct name, since a redeclaration reuses its slot.
+                nodes[offset + C] = slots.size();
+            }
+            default -> {
+                // Unary and binary operators, groupings, expression and print statements.
+                resolve(nodes[offset + A], scopes, frames);
+                int kind = nodes[offset + KIND];
+                if (kind >= ADD && kind <= NOT_EQUAL) resolve(nodes[offset + B], scopes, frames);
+            }
+        }
+    }
+}
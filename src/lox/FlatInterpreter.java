@@ -0,0 +1,181 @@
+package lox;
+
+/**
+ * Runs a resolved FlatAst by walking its arrays by index, with the same
+ * semantics, output and runtime errors as the Interpreter.
+ */
+class FlatInterpreter {
+    final Environment globals = new Environment();
+    OutputSink out = OutputSink.stdout();
+    private Environment environment = globals;
+    private FlatAst ast;
+    private Object[] constants;
+    // Out-of-band result of evaluateNumber(), as in the Interpreter.
+    private boolean isNumber;
+    private Object nonNumber;
+
+    void interpret(FlatAst ast) {
+        this.ast = ast;
+        this.constants = ast.constants.toArray();
+        try {
+            for (int i = 0; i < ast.programCount; i++) {
+                execute(ast.lists[ast.programStart + i]);
+            }
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    private void execute(int node) {
+        FlatAst ast = this.ast;
+        switch (ast.kind(node)) {
+            case FlatAst.EXPRESSION -> evaluate(ast.a(node));
+            case FlatAst.PRINT -> out.printValue(evaluate(ast.a(node)));
+            case FlatAst.VAR -> {
+                int initializer = ast.b(node);
+                Object value = initializer < 0 ? null : evaluate(initializer);
+                int slot = ast.c(node);
+                if (slot < 0) {
+                    globals.define((Symbol) constants[ast.a(node)], value);
+                } else {
+                    environment.defineAt(slot, value);
+                }
+            }
+            case FlatAst.BLOCK -> {
+                int start = ast.a(node);
+                int end = start + ast.b(node);
+                int slots = ast.c(node);
+                // Nothing is declared in this block, so it can share the enclosing frame.
+                if (slots == 0) {
+                    for (int i = start; i < end; i++) execute(ast.lists[i]);
+                    return;
+                }
+                Environment previous = environment;
+                try {
+                    environment = new Environment(previous, slots);
+                    for (int i = start; i < end; i++) execute(ast.lists[i]);
+                } finally {
+                    environment = previous;
+                }
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown statement kind \{ast.kind(node)}");
+        }
+    }
+
+    private Object evaluate(int node) {
+        FlatAst ast = this.ast;
+        int kind = ast.kind(node);
+        switch (kind) {
+            case FlatAst.LITERAL -> {
+                int constant = ast.a(node);
+                return constant < 0 ? null : constants[constant];
+            }
+            case FlatAst.VARIABLE -> {
+                int depth = ast.b(node);
+                if (depth < 0) return globals.get((Symbol) constants[ast.a(node)], ast.lines[node]);
+                return environment.getAt(depth, ast.c(node));
+            }
+            case FlatAst.ASSIGN -> {
+                Object value = evaluate(ast.b(node));
+                int target = ast.a(node);
+                int depth = ast.b(target);
+                if (depth < 0) {
+                    globals.assign((Symbol) constants[ast.a(target)], ast.lines[target], value);
+                } else {
+                    environment.assignAt(depth, ast.c(target), value);
+                }
+                return value;
+            }
+            case FlatAst.GROUPING -> {
+                return evaluate(ast.a(node));
+            }
+            case FlatAst.NEGATE -> {
+                return evaluateNumber(node);
+            }
+            case FlatAst.NOT -> {
+                return !Interpreter.isTruthy(evaluate(ast.a(node)));
+            }
+            case FlatAst.ADD, FlatAst.SUBTRACT, FlatAst.MULTIPLY, FlatAst.DIVIDE -> {
+                // The only place an arithmetic result gets boxed.
+                double value = arithmetic(node);
+                return isNumber ? value : nonNumber;
+            }
+        }
+
+        double left = evaluateNumber(ast.a(node));
+        boolean leftIsNumber = isNumber;
+        double right = evaluateNumber(ast.b(node));
+        if (!leftIsNumber || !isNumber) {
+            throw new RuntimeError(ast.lines[node], "Operands must be a numbers.");
+        }
+        return switch (kind) {
+            case FlatAst.GREATER -> left > right;
+            case FlatAst.GREATER_EQUAL -> left >= right;
+            case FlatAst.LESS -> left < right;
+            case FlatAst.LESS_EQUAL -> left <= right;
+            // Compare bits, which is what Double.equals() does: NaN == NaN and 0 != -0.
+            case FlatAst.EQUAL -> Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            case FlatAst.NOT_EQUAL -> Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            default -> throw new IllegalArgumentException(STR."Unknown expression kind \{kind}");
+        };
+    }
+
+    // Evaluates without boxing, like Interpreter.evaluateNumber().
+    private double evaluateNumber(int node) {
+        FlatAst ast = this.ast;
+        switch (ast.kind(node)) {
+            case FlatAst.LITERAL -> {
+                int constant = ast.a(node);
+                if (constant >= 0 && constants[constant] instanceof Double value) {
+                    isNumber = true;
+                    return value;
+                }
+            }
+            case FlatAst.ADD, FlatAst.SUBTRACT, FlatAst.MULTIPLY, FlatAst.DIVIDE -> {
+                return arithmetic(node);
+            }
+            case FlatAst.NEGATE -> {
+                double value = evaluateNumber(ast.a(node));
+                if (!isNumber) throw new RuntimeError(ast.lines[node], "Operand must be a number.");
+                return -value;
+            }
+        }
+
+        Object value = evaluate(node);
+        if (value instanceof Double number) {
+            isNumber = true;
+            return number;
+        }
+        isNumber = false;
+        nonNumber = value;
+        return Double.NaN;
+    }
+
+    private double arithmetic(int node) {
+        FlatAst ast = this.ast;
+        int kind = ast.kind(node);
+        double left = evaluateNumber(ast.a(node));
+        boolean leftIsNumber = isNumber;
+        Object leftValue = nonNumber;
+        double right = evaluateNumber(ast.b(node));
+
+        if (leftIsNumber && isNumber) {
+            return switch (kind) {
+                case FlatAst.SUBTRACT -> left - right;
+                case FlatAst.MULTIPLY -> left * right;
+                case FlatAst.DIVIDE -> left / right;
+                default -> left + right;
+            };
+        }
+
+        if (kind == FlatAst.ADD && !leftIsNumber && !isNumber
+                && leftValue instanceof CharSequence a && nonNumber instanceof CharSequence b) {
+            nonNumber = Rope.concat(a, b);
+            return Double.NaN;
+        }
+        if (kind == FlatAst.ADD) {
+            throw new RuntimeError(ast.lines[node], "Operands must both be numbers or strings");
+        }
+        throw new RuntimeError(ast.lines[node], "Operands must be a numbers.");
+    }
+}
@@ -0,0 +1,234 @@
+package lox;
+
+/**
+ * The same grammar as Parser, but emitting nodes straight into a FlatAst
+ * instead of building Expr and Stmt objects. Syntax errors are reported the
+ * same way, at the same tokens.
+ */
+class FlatParser {
+    @SuppressWarnings("serial")
+    private static class ParseError extends RuntimeException {}
+
+    private final TokenCursor tokens;
+    private final FlatAst ast;
+
+    // Every node uses up at least one token, so the arena never has to grow.
+    FlatParser(TokenBuffer tokens) {
+        this.tokens = tokens.cursor();
+        this.ast = new FlatAst(tokens.size());
+    }
+
+    FlatAst parse() {
+        int mark = ast.mark();
+        while (!isAtEnd()) {
+            int statement = declaration();
+            if (statement >= 0) ast.add(statement);
+        }
+        ast.finish(mark);
+        return ast;
+    }
+
+    // Returns -1 if the declaration had a syntax error.
+    private int declaration() {
+        int mark = ast.mark();
+        try {
+            if (match(TokenType.VAR)) return varDeclaration();
+            return statement();
+        } catch (ParseError error) {
+            // Drop the statements of any block the error was in the middle of.
+            ast.discard(mark);
+            synchronize();
+            return -1;
+        }
+    }
+
+    private int varDeclaration() {
+        consume(TokenType.IDENTIFIER, "Expect variable name.");
+        int name = ast.constant(tokens.previousValue());
+        int line = tokens.previousLine();
+        int initializer = -1;
+        if (match(TokenType.EQUAL)) {
+            initializer = expression();
+        }
+        consume(TokenType.SEMICOLON, "Expect ';' after initializer.");
+        return ast.var(name, line, initializer);
+    }
+
+    private int statement() {
+        if (match(TokenType.PRINT)) return printStatement();
+        if (match(TokenType.LEFT_BRACE)) return block();
+
+        return expressionStatement();
+    }
+
+    private int printStatement() {
+        int expr = expression();
+        consume(TokenType.SEMICOLON, "Expect ';' after value.");
+        return ast.print(expr);
+    }
+
+    private int expressionStatement() {
+        int expr = expression();
+        consume(TokenType.SEMICOLON, "Expect ';' after expression.");
+        return ast.expression(expr);
+    }
+
+    private int block() {
+        int mark = ast.mark();
+        while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+            int statement = declaration();
+            if (statement >= 0) ast.add(statement);
+        }
+        consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+        return ast.block(mark);
+    }
+
+    private int expression() {
+        return assignment();
+    }
+
+    private int assignment() {
+        int expr = equality();
+        if (match(TokenType.EQUAL)) {
+            int equalsLine = tokens.previousLine();
+            int value = assignment();
+
+            if (ast.kind(expr) == FlatAst.VARIABLE) {
+                return ast.assign(expr, value);
+            }
+            error(new Token(TokenType.EQUAL, "=", null, equalsLine), "Invalid assignment target.");
+        }
+        return expr;
+    }
+
+    private int equality() {
+        int left = comparison();
+        while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
+            TokenType operator = tokens.previousType();
+            int line = tokens.previousLine();
+            int right = comparison();
+            left = ast.binary(operator, line, left, right);
+        }
+        return left;
+    }
+
+    private int comparison() {
+        int left = term();
+        while (match(TokenType.GREATER, TokenType.LESS, TokenType.GREATER_EQUAL, TokenType.LESS_EQUAL)) {
+            TokenType operator = tokens.previousType();
+            int line = tokens.previousLine();
+            int right = term();
+            left = ast.binary(operator, line, left, right);
+        }
+        return left;
+    }
+
+    private int term() {
+        int left = factor();
+        while (match(TokenType.PLUS, TokenType.MINUS)) {
+            TokenType operator = tokens.previousType();
+            int line = tokens.previousLine();
+            int right = factor();
+            left = ast.binary(operator, line, left, right);
+        }
+        return left;
+    }
+
+    private int factor() {
+        int left = unary();
+        while (match(TokenType.SLASH, TokenType.STAR)) {
+            TokenType operator = tokens.previousType();
+            int line = tokens.previousLine();
+            int right = unary();
+            left = ast.binary(operator, line, left, right);
+        }
+        return left;
+    }
+
+    private int unary() {
+        if (match(TokenType.BANG, TokenType.MINUS)) {
+            TokenType operator = tokens.previousType();
+            int line = tokens.previousLine();
+            int right = unary();
+            return ast.unary(operator, line, right);
+        }
+        return primary();
+    }
+
+    private int primary() {
+        if (match(TokenType.FALSE)) return ast.literal(false);
+        if (match(TokenType.TRUE)) return ast.literal(true);
+        if (match(TokenType.NIL)) return ast.literal(null);
+
+        if (match(TokenType.NUMBER, TokenType.STRING)) {
+            return ast.literal(tokens.previousValue());
+        }
+        if (match(TokenType.IDENTIFIER)) {
+            return ast.variable((Symbol) tokens.previousValue(), tokens.previousLine());
+        }
+
+        if (match(TokenType.LEFT_PAREN)) {
+            int expr = expression();
+            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression");
+            return ast.grouping(expr);
+        }
+        throw error(tokens.current(), "Expect expression");
+    }
+
+    private boolean match(TokenType... types) {
+        for (TokenType type : types) {
+            if (check(type)) {
+                advance();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
+        throw error(tokens.current(), message);
+    }
+
+    private boolean check(TokenType type) {
+        if (isAtEnd()) return false;
+        return tokens.type() == type;
+    }
+
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
+    }
+
+    private boolean isAtEnd() {
+        return tokens.type() == TokenType.EOF;
+    }
+
+    private ParseError error(Token token, String message) {
+        Lox.error(token, message);
+        return new ParseError();
+    }
+
+    private void synchronize() {
+        advance();
+
+        while (!isAtEnd()) {
+            if (tokens.previousType() == TokenType.SEMICOLON) return;
+
+            switch (tokens.type()) {
+                case CLASS:
+                case FUN:
+                case VAR:
+                case FOR:
+                case IF:
+                case WHILE:
+                case PRINT:
+                case RETURN:
+                    return;
+            }
+            advance();
+        }
+    }
+}
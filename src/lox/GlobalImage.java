@@ -0,0 +1,94 @@
+package lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The global variables of a finished run, saved to a file so later runs can
+ * start with them already defined instead of executing the same prelude again.
+ * Each global is its name and a tagged value: nil, a boolean, a number or a
+ * string.
+ */
+final class GlobalImage {
+    private static final int MAGIC = 0x4c4f5849; // "LOXI"
+    private static final int VERSION = 1;
+
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4;
+
+    private GlobalImage() {}
+
+    static void save(Path file, Environment globals) throws IOException {
+        Map<Symbol, Object> values = globals.definedGlobals();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(values.size());
+            for (Map.Entry<Symbol, Object> entry : values.entrySet()) {
+                writeString(out, entry.getKey().name);
+                switch (entry.getValue()) {
+                    case null -> out.writeByte(NIL);
+                    case Boolean value -> out.writeByte(value ? TRUE : FALSE);
+                    case Double value -> {
+                        out.writeByte(NUMBER);
+                        out.writeDouble(value);
+                    }
+                    case CharSequence value -> {
+                        out.writeByte(STRING);
+                        writeString(out, value.toString());
+                    }
+                    default -> throw new IllegalArgumentException(STR."Can't save \{entry.getValue()}");
+                }
+            }
+        }
+    }
+
+    // Defines every global in the image. Throws if the file isn't a valid image.
+    static void load(Path file, Environment globals) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            throw new IOException("No such file.", e);
+        }
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not an image file.");
+            if (in.getInt() != VERSION) throw new IOException("Image was saved by a different version.");
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                Symbol name = globals.symbols().intern(readString(in));
+                Object value = switch (in.get()) {
+                    case NIL -> null;
+                    case TRUE -> true;
+                    case FALSE -> false;
+                    case NUMBER -> in.getDouble();
+                    case STRING -> readString(in);
+                    default -> throw new IOException("Bad value in image.");
+                };
+                globals.define(name, value);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Image file is damaged.", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -3,11 +3,19 @@ package lox;
 import java.util.List;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+    final Environment globals = new Environment();
+    OutputSink out = OutputSink.stdout();
+    Environment environment = globals;
+    // Out-of-band result of evaluateNumber() when the value wasn't a number.
+    private boolean isNumber;
+    private Object nonNumber;
+    // What the current runs have used of their Budget. Null when there is none.
+    private Budget.Meter meter;
 
     void interpret(List<Stmt> statements) {
         try {
             for (Stmt stmt : statements) {
+                if (meter != null) meter.step(stmt);
                 execute(stmt);
             }
         } catch (RuntimeError error) {
@@ -15,6 +23,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
+    // Limits the runs from now on, together, to budget, or lifts the limits if it's null.
+    void limit(Budget budget) {
+        meter = budget == null ? null : new Budget.Meter(budget);
+    }
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
@@ -27,12 +40,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.MINUS) {
+            return evaluateNumber(expr);
+        }
         Object value = evaluate(expr.right);
         return switch (expr.operator.type) {
-            case TokenType.MINUS -> {
-                checkNumberOperand(expr.operator, value);
-                yield -(double) value;
-            }
             case TokenType.BANG -> !isTruthy(value);
             default -> null; // Unreachable
         };
@@ -40,110 +52,189 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if (expr.depth < 0) return globals.get(expr.name);
+        return environment.getAt(expr.depth, expr.slot);
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        if (expr.depth < 0) {
+            globals.assign(expr.name, value);
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
+        switch (expr.operator.type) {
+            case TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.PLUS -> {
+                // The only place an arithmetic result gets boxed.
+                double value = arithmetic(expr);
+                return isNumber ? value : nonNumber;
+            }
+        }
+
+        double left = evaluateNumber(expr.left);
+        boolean leftIsNumber = isNumber;
+        double right = evaluateNumber(expr.right);
+        if (!leftIsNumber || !isNumber) {
+            throw new RuntimeError(expr.operator, "Operands must be a numbers.");
+        }
 
         return switch (expr.operator.type) {
-            case TokenType.GREATER -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left > (double) right;
-            }
-            case TokenType.GREATER_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left >= (double) right;
-            }
-            case TokenType.LESS -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left < (double) right;
-            }
-            case TokenType.LESS_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left <= (double) right;
-            }
-            case TokenType.BANG_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield !isEqual(left, right);
-            }
-            case TokenType.EQUAL_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield isEqual(left, right);
+            case TokenType.GREATER -> left > right;
+            case TokenType.GREATER_EQUAL -> left >= right;
+            case TokenType.LESS -> left < right;
+            case TokenType.LESS_EQUAL -> left <= right;
+            // Compare bits, which is what Double.equals() does: NaN == NaN and 0 != -0.
+            case TokenType.BANG_EQUAL -> Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            case TokenType.EQUAL_EQUAL -> Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            default -> null; // Unreachable
+        };
+    }
+
+    /**
+     * Evaluates an operand that ought to be a number without boxing it. Literals,
+     * negation and arithmetic are computed on primitive doubles all the way down.
+     * If the value turns out not to be a number, isNumber is cleared and the
+     * value is left in nonNumber, so the caller can still evaluate its other
+     * operand before reporting the error.
+     */
+    double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            isNumber = true;
+            return value;
+        }
+        if (expr instanceof Expr.Binary binary) {
+            switch (binary.operator.type) {
+                case TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.PLUS -> {
+                    return arithmetic(binary);
+                }
             }
+        }
+        if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            double value = evaluateNumber(unary.right);
+            if (!isNumber) throw new RuntimeError(unary.operator, "Operand must be a number.");
+            return -value;
+        }
+        if (expr instanceof Expr.Grouping grouping) {
+            return evaluateNumber(grouping.expression);
+        }
+
+        Object value = evaluate(expr);
+        if (value instanceof Double number) {
+            isNumber = true;
+            return number;
+        }
+        isNumber = false;
+        nonNumber = value;
+        return Double.NaN;
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        double left = evaluateNumber(expr.left);
+        boolean leftIsNumber = isNumber;
+        Object leftValue = nonNumber;
+        double right = evaluateNumber(expr.right);
+
+        if (leftIsNumber && isNumber) {
+            return switch (expr.operator.type) {
+                case TokenType.MINUS -> left - right;
+                case TokenType.STAR -> left * right;
+                case TokenType.SLASH -> left / right;
+                default -> left + right;
+            };
+        }
+
+        if (expr.operator.type == TokenType.PLUS && !leftIsNumber && !isNumber
+                && leftValue instanceof CharSequence a && nonNumber instanceof CharSequence b) {
+            if (meter != null) meter.concatenate(a, b, expr);
+            nonNumber = Rope.concat(a, b);
+            return Double.NaN;
+        }
+        if (expr.operator.type == TokenType.PLUS) {
+            throw new RuntimeError(expr.operator, "Operands must both be numbers or strings");
+        }
+        throw new RuntimeError(expr.operator, "Operands must be a numbers.");
+    }
+
+    // Operator semantics on boxed values, for execution modes that don't evaluate
+    // their operands through evaluateNumber().
+    static Object unary(Token operator, Object value) {
+        return switch (operator.type) {
             case TokenType.MINUS -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left - (double) right;
-            }
-            case TokenType.STAR -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left * (double) right;
+                checkNumberOperand(operator, value);
+                yield -(double) value;
             }
-            case TokenType.SLASH -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left / (double) right;
+            case TokenType.BANG -> !isTruthy(value);
+            default -> null; // Unreachable
+        };
+    }
+
+    static Object binary(Token operator, Object left, Object right) {
+        if (operator.type == TokenType.PLUS) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
             }
-            case TokenType.PLUS -> {
-                if (left instanceof Double && right instanceof Double) {
-                    yield (double) left + (double) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    yield left + (String) right;
-                }
-                throw new RuntimeError(expr.operator, "Operands must both be numbers or strings");
+            if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                return Rope.concat(a, b);
             }
+            throw new RuntimeError(operator, "Operands must both be numbers or strings");
+        }
+
+        checkNumberOperands(operator, left, right);
+        return switch (operator.type) {
+            case TokenType.GREATER -> (double) left > (double) right;
+            case TokenType.GREATER_EQUAL -> (double) left >= (double) right;
+            case TokenType.LESS -> (double) left < (double) right;
+            case TokenType.LESS_EQUAL -> (double) left <= (double) right;
+            case TokenType.BANG_EQUAL -> !isEqual(left, right);
+            case TokenType.EQUAL_EQUAL -> isEqual(left, right);
+            case TokenType.MINUS -> (double) left - (double) right;
+            case TokenType.STAR -> (double) left * (double) right;
+            case TokenType.SLASH -> (double) left / (double) right;
             default -> null; // Unreachable
         };
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (!(operand instanceof Double)) {
             throw new RuntimeError(operator, "Operand must be a number.");
         }
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
         throw new RuntimeError(operator, "Operands must be a numbers.");
     }
 
-    private boolean isTruthy(Object value) {
+    static boolean isTruthy(Object value) {
         if (value == null) return false;
         if (value instanceof Boolean) return (boolean) value;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
+        // A String and a Rope with the same characters are the same string.
+        if (a instanceof CharSequence && b instanceof CharSequence) return a.toString().equals(b.toString());
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
+        if (object instanceof Double number) return NumberFormatter.toString(number);
         return object.toString();
     }
 
-    private Object evaluate(Expr expression) {
+    Object evaluate(Expr expression) {
         return expression.accept(this);
     }
 
-    private void execute(Stmt stmt) {
+    void execute(Stmt stmt) {
         stmt.accept(this);
     }
 
@@ -156,7 +247,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.printValue(value);
         return null;
     }
 
@@ -166,13 +257,25 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
+        if (stmt.slot < 0) {
+            globals.define(stmt.name.symbol, value);
+        } else {
+            environment.defineAt(stmt.slot, value);
+        }
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        if (meter != null) meter.enter(stmt);
+        if (stmt.slots == 0) {
+            // Nothing is declared in this block, so it can share the enclosing frame.
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+        executeBlock(stmt.statements, new Environment(environment, stmt.slots));
         return null;
     }
 
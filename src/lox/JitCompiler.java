@@ -0,0 +1,388 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a resolved statement list into JVM bytecode and loads it as a hidden
+ * class, so HotSpot can optimize it like any other Java method. The generated
+ * class has a single method:
+ *
+ *   static void run(Environment environment, Environment globals, Object[] constants)
+ *
+ * Every operation is a call into JitRuntime. Lox has no control flow yet, so
+ * the code is straight-line and needs no stack map frames, which is why the
+ * class file is written directly instead of through a bytecode library.
+ */
+class JitCompiler {
+    private static final MethodType RUN_TYPE =
+            MethodType.methodType(void.class, Environment.class, Environment.class, Object[].class);
+    private static final String ENVIRONMENT = "lox/Environment";
+    private static final String RUNTIME = "lox/JitRuntime";
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String ENVIRONMENT_DESC = "Llox/Environment;";
+    private static final String TOKEN_DESC = "Llox/Token;";
+    private static final String BINARY_DESC = STR."(\{OBJECT_DESC}\{OBJECT_DESC}\{TOKEN_DESC})\{OBJECT_DESC}";
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // Local variable slots of the generated method.
+    private static final int ENVIRONMENT_LOCAL = 0;
+    private static final int GLOBALS_LOCAL = 1;
+    private static final int CONSTANTS_LOCAL = 2;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals = 3;
+    // Local holding the innermost frame allocated so far.
+    private int environment = ENVIRONMENT_LOCAL;
+    private final OutputSink out;
+
+    private JitCompiler(OutputSink out) {
+        this.out = out;
+    }
+
+    /**
+     * Returns a handle of type (Environment, Environment)void that runs the
+     * statements in the given frame. slots is the size of the frame to allocate
+     * for them first, or 0 to run them in the frame passed in. Returns null if
+     * the statements don't fit in a single JVM method. Print statements write
+     * to out.
+     */
+    static MethodHandle compile(List<Stmt> statements, int slots, OutputSink out) {
+        JitCompiler compiler = new JitCompiler(out);
+        compiler.block(statements, slots);
+        compiler.emit(0xb1); // return
+        if (compiler.code.size() > MAX_CODE_LENGTH) return null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(compiler.classFile(), true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+            return MethodHandles.insertArguments(run, 2, (Object) compiler.constants.toArray());
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new IllegalStateException("Failed to load compiled block", e);
+        }
+    }
+
+    private void block(List<Stmt> statements, int slots) {
+        int enclosing = environment;
+        if (slots > 0) {
+            load(environment);
+            pushInt(slots);
+            invokeStatic(RUNTIME, "frame", STR."(\{ENVIRONMENT_DESC}I)\{ENVIRONMENT_DESC}", -1);
+            environment = maxLocals++;
+            store(environment);
+        }
+        for (Stmt statement : statements) {
+            statement(statement);
+        }
+        environment = enclosing;
+    }
+
+    private void statement(Stmt stmt) {
+        switch (stmt) {
+            case Stmt.Expression expression -> {
+                expression(expression.expression);
+                emit(0x57); // pop
+                stack--;
+            }
+            case Stmt.Print print -> {
+                expression(print.expression);
+                constant(out, "lox/OutputSink");
+                invokeStatic(RUNTIME, "print", STR."(\{OBJECT_DESC}Llox/OutputSink;)V", -2);
+            }
+            case Stmt.Var var -> {
+                if (var.initializer == null) {
+                    emit(0x01); // aconst_null
+                    push();
+                } else {
+                    expression(var.initializer);
+                }
+                if (var.slot < 0) {
+                    load(GLOBALS_LOCAL);
+                    constant(var.name.symbol, "lox/Symbol");
+                    invokeStatic(RUNTIME, "defineGlobal",
+                            STR."(\{OBJECT_DESC}\{ENVIRONMENT_DESC}Llox/Symbol;)V", -3);
+                } else {
+                    load(environment);
+                    pushInt(var.slot);
+                    invokeStatic(RUNTIME, "define", STR."(\{OBJECT_DESC}\{ENVIRONMENT_DESC}I)V", -3);
+                }
+            }
+            case Stmt.Block block -> block(block.statements, block.slots);
+            default -> throw new IllegalArgumentException(STR."Unknown statement \{stmt}");
+        }
+    }
+
+    private void expression(Expr expr) {
+        switch (expr) {
+            case Expr.Literal literal -> {
+                if (literal.value == null) {
+                    emit(0x01); // aconst_null
+                    push();
+                } else {
+                    constant(literal.value, null);
+                }
+            }
+            case Expr.Grouping grouping -> expression(grouping.expression);
+            case Expr.Variable variable -> {
+                if (variable.depth < 0) {
+                    load(GLOBALS_LOCAL);
+                    constant(variable.name, "lox/Token");
+                    invokeVirtual(ENVIRONMENT, "get", STR."(\{TOKEN_DESC})\{OBJECT_DESC}", -1);
+                } else {
+                    load(environment);
+                    pushInt(variable.depth);
+                    pushInt(variable.slot);
+                    invokeVirtual(ENVIRONMENT, "getAt", STR."(II)\{OBJECT_DESC}", -2);
+                }
+            }
+            case Expr.Assign assign -> {
+                expression(assign.value);
+                if (assign.depth < 0) {
+                    load(GLOBALS_LOCAL);
+                    constant(assign.name, "lox/Token");
+                    invokeStatic(RUNTIME, "assignGlobal",
+                            STR."(\{OBJECT_DESC}\{ENVIRONMENT_DESC}\{TOKEN_DESC})\{OBJECT_DESC}", -2);
+                } else {
+                    load(environment);
+                    pushInt(assign.depth);
+                    pushInt(assign.slot);
+                    invokeStatic(RUNTIME, "assign",
+                            STR."(\{OBJECT_DESC}\{ENVIRONMENT_DESC}II)\{OBJECT_DESC}", -3);
+                }
+            }
+            case Expr.Unary unary -> {
+                expression(unary.right);
+                if (unary.operator.type == TokenType.MINUS) {
+                    constant(unary.operator, "lox/Token");
+                    invokeStatic(RUNTIME, "negate", STR."(\{OBJECT_DESC}\{TOKEN_DESC})\{OBJECT_DESC}", -1);
+                } else {
+                    invokeStatic(RUNTIME, "not", STR."(\{OBJECT_DESC})\{OBJECT_DESC}", 0);
+                }
+            }
+            case Expr.Binary binary -> {
+                expression(binary.left);
+                expression(binary.right);
+                constant(binary.operator, "lox/Token");
+                String helper = switch (binary.operator.type) {
+                    case TokenType.PLUS -> "add";
+                    case TokenType.MINUS -> "subtract";
+                    case TokenType.STAR -> "multiply";
+                    case TokenType.SLASH -> "divide";
+                    case TokenType.GREATER -> "greater";
+                    case TokenType.GREATER_EQUAL -> "greaterEqual";
+                    case TokenType.LESS -> "less";
+                    case TokenType.LESS_EQUAL -> "lessEqual";
+                    case TokenType.EQUAL_EQUAL -> "equal";
+                    case TokenType.BANG_EQUAL -> "notEqual";
+                    default -> throw new IllegalArgumentException(STR."Unknown operator \{binary.operator}");
+                };
+                invokeStatic(RUNTIME, helper, BINARY_DESC, -2);
+            }
+            default -> throw new IllegalArgumentException(STR."Unknown expression \{expr}");
+        }
+    }
+
+    // Pushes constants[index], cast to type unless it is null.
+    private void constant(Object value, String type) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        load(CONSTANTS_LOCAL);
+        pushInt(index);
+        emit(0x32); // aaload
+        stack--;
+        if (type != null) {
+            emit(0xc0); // checkcast
+            emitShort(pool.classRef(type));
+        }
+    }
+
+    private void load(int local) {
+        if (local <= 3) {
+            emit(0x2a + local); // aload_<n>
+        } else {
+            localInstruction(0x19, local); // aload
+        }
+        push();
+    }
+
+    private void store(int local) {
+        localInstruction(0x3a, local); // astore
+        stack--;
+    }
+
+    private void localInstruction(int opcode, int local) {
+        if (local > 0xff) {
+            emit(0xc4); // wide
+            emit(opcode);
+            emitShort(local);
+        } else {
+            emit(opcode);
+            emit(local);
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(0x03 + value); // iconst_<n>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(0x10); // bipush
+            emit(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emit(0x11); // sipush
+            emitShort(value);
+        } else {
+            emit(0x13); // ldc_w
+            emitShort(pool.integer(value));
+        }
+        push();
+    }
+
+    // stackEffect is the net change in operand stack depth once the call returns.
+    private void invokeStatic(String owner, String name, String descriptor, int stackEffect) {
+        emit(0xb8);
+        emitShort(pool.methodRef(owner, name, descriptor));
+        stack += stackEffect;
+    }
+
+    private void invokeVirtual(String owner, String name, String descriptor, int stackEffect) {
+        emit(0xb6);
+        emitShort(pool.methodRef(owner, name, descriptor));
+        stack += stackEffect;
+    }
+
+    private void push() {
+        stack++;
+        if (stack > maxStack) maxStack = stack;
+    }
+
+    private void emit(int b) {
+        code.write(b);
+    }
+
+    private void emitShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private byte[] classFile() throws IOException {
+        int thisClass = pool.classRef("lox/CompiledBlock");
+        int superClass = pool.classRef("java/lang/Object");
+        int name = pool.utf8("run");
+        int descriptor = pool.utf8(STR."(\{ENVIRONMENT_DESC}\{ENVIRONMENT_DESC}[\{OBJECT_DESC})V");
+        int codeName = pool.utf8("Code");
+        byte[] bytecode = code.toByteArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);  // minor version
+        out.writeShort(52); // major version
+        pool.writeTo(out);
+        out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+
+        out.writeShort(1); // methods
+        out.writeShort(0x0008); // ACC_STATIC
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1); // attributes
+        out.writeShort(codeName);
+        out.writeInt(12 + bytecode.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+
+        out.writeShort(0); // class attributes
+        return bytes.toByteArray();
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return entry(STR."Utf8 \{value}", () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int integer(int value) {
+            return entry(STR."Integer \{value}", () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        int classRef(String name) {
+            int utf8 = utf8(name);
+            return entry(STR."Class \{name}", () -> {
+                out.writeByte(7);
+                out.writeShort(utf8);
+            });
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerClass = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry(STR."NameAndType \{name} \{descriptor}", () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry(STR."Methodref \{owner} \{name} \{descriptor}", () -> {
+                out.writeByte(10);
+                out.writeShort(ownerClass);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+
+        private int entry(String key, Writer writer) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(count);
+            classFile.write(bytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package lox;
+
+/**
+ * Static entry points called by code that JitCompiler generates. They have the
+ * same semantics as the Interpreter's, so compiled blocks print the same
+ * output and throw the same RuntimeErrors, with the same lines.
+ */
+final class JitRuntime {
+    private JitRuntime() {}
+
+    static Environment frame(Environment enclosing, int slots) {
+        return new Environment(enclosing, slots);
+    }
+
+    static void print(Object value, OutputSink out) {
+        out.printValue(value);
+    }
+
+    static void define(Object value, Environment environment, int slot) {
+        environment.defineAt(slot, value);
+    }
+
+    static void defineGlobal(Object value, Environment globals, Symbol name) {
+        globals.define(name, value);
+    }
+
+    static Object assign(Object value, Environment environment, int depth, int slot) {
+        environment.assignAt(depth, slot, value);
+        return value;
+    }
+
+    static Object assignGlobal(Object value, Environment globals, Token name) {
+        globals.assign(name, value);
+        return value;
+    }
+
+    static Object negate(Object value, Token operator) {
+        Interpreter.checkNumberOperand(operator, value);
+        return -(double) value;
+    }
+
+    static Object not(Object value) {
+        return !Interpreter.isTruthy(value);
+    }
+
+    static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double a && right instanceof Double b) return a + b;
+        if (left instanceof CharSequence a && right instanceof CharSequence b) return Rope.concat(a, b);
+        throw new RuntimeError(operator, "Operands must both be numbers or strings");
+    }
+
+    static Object subtract(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    static Object multiply(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    static Object divide(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left / (double) right;
+    }
+
+    static Object greater(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    static Object greaterEqual(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    static Object less(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    static Object lessEqual(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    static Object equal(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return Interpreter.isEqual(left, right);
+    }
+
+    static Object notEqual(Object left, Object right, Token operator) {
+        Interpreter.checkNumberOperands(operator, left, right);
+        return !Interpreter.isEqual(left, right);
+    }
+}
@@ -4,30 +4,354 @@ import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static Interpreter interpreter;
+    private static final VM vm = new VM();
+    private static final FlatInterpreter flatInterpreter = new FlatInterpreter();
+    private static final ClosureCompiler closures = new ClosureCompiler();
+    // Run on the bytecode VM instead of the tree-walking interpreter.
+    private static boolean useVm = false;
+    // Run as a tree of pre-compiled closures instead of visiting the AST.
+    private static boolean useClosures = false;
+    private static boolean optimize = false;
+    private static boolean optimizeStats = false;
+    private static boolean specialize = false;
+    private static boolean specializeStats = false;
+    // Count block executions and compile hot ones to JVM bytecode.
+    private static boolean tiered = false;
+    private static int jitThreshold = 1000;
+    private static boolean traceJit = false;
+    private static boolean stream = false;
+    // Scan the file's bytes in place through a memory mapping.
+    private static boolean mmap = false;
+    // Scan into a TokenBuffer instead of a list of Token objects.
+    private static boolean compactTokens = false;
+    // Parse into a FlatAst and run that, optionally checking it against the object AST.
+    private static boolean flat = false;
+    private static boolean flatCheck = false;
+    // Scan and parse large files in pieces on several threads.
+    private static boolean parallel = false;
+    // Keep parsed programs on disk, next to the script or in cacheDirectory.
+    private static boolean cache = false;
+    private static Path cacheDirectory = null;
+    // Start with the globals saved in image, and save them to saveImage at the end.
+    private static Path image = null;
+    private static Path saveImage = null;
+    // Where print statements and syntax errors go. Buffered only when asked for.
+    private static OutputSink out = OutputSink.stdout();
+    private static int outputBuffer = 0;
+    private static long flushInterval = 100;
+    // Count and time every node on the tree-walker, and report where the time went.
+    private static Profiler profiler = null;
+    private static Path profileStacks = null;
+    // Limits on the tree-walker, for the whole run, or for each script of a batch. Null for none.
+    private static Budget budget = null;
+    // Run every script in a directory or manifest, each in its own Context, this many at a time.
+    private static Path batch = null;
+    private static int batchConcurrency = Runtime.getRuntime().availableProcessors();
+    // The size of what's being run, for the JFR events of later phases. -1 if unknown.
+    private static int tokenCount = -1;
+    private static long sourceSize = -1;
+    // The command line's errors, printed as they're reported.
+    private static Diagnostics diagnostics = Diagnostics.printing(out);
+    // Set while a Context runs or a front-end worker parses, so errors go to its Diagnostics instead.
+    private static final ThreadLocal<Diagnostics> reporting = new ThreadLocal<>();
+
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [filename]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        String path = null;
+        for (String arg : args) {
+            switch (arg) {
+                case "--vm" -> useVm = true;
+                case "--closures" -> useClosures = true;
+                case "--optimize" -> optimize = true;
+                case "--optimize-stats" -> optimize = optimizeStats = true;
+                case "--specialize" -> specialize = true;
+                case "--specialize-stats" -> specialize = specializeStats = true;
+                case "--tiered" -> tiered = true;
+                case "--trace-jit" -> tiered = traceJit = true;
+                case "--stream" -> stream = true;
+                case "--mmap" -> mmap = true;
+                case "--compact-tokens" -> compactTokens = true;
+                case "--flat" -> flat = true;
+                case "--flat-check" -> flat = flatCheck = true;
+                case "--parallel" -> parallel = true;
+                case "--cache" -> cache = true;
+                case "--buffer-output" -> outputBuffer = 64 * 1024;
+                case "--profile" -> profileStacks = Paths.get("lox.collapsed");
+                default -> {
+                    if (arg.startsWith("--image=")) {
+                        image = Paths.get(arg.substring("--image=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--save-image=")) {
+                        saveImage = Paths.get(arg.substring("--save-image=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--cache-dir=")) {
+                        cache = true;
+                        cacheDirectory = Paths.get(arg.substring("--cache-dir=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--profile=")) {
+                        profileStacks = Paths.get(arg.substring("--profile=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--max-steps=")) {
+                        budget = budget().withSteps(parseLong(arg.substring("--max-steps=".length()), 1));
+                        continue;
+                    }
+                    if (arg.startsWith("--max-millis=")) {
+                        budget = budget().withMillis(parseLong(arg.substring("--max-millis=".length()), 1));
+                        continue;
+                    }
+                    if (arg.startsWith("--max-bytes=")) {
+                        budget = budget().withBytes(parseLong(arg.substring("--max-bytes=".length()), 1));
+                        continue;
+                    }
+                    if (arg.startsWith("--batch=")) {
+                        batch = Paths.get(arg.substring("--batch=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--batch-concurrency=")) {
+                        batchConcurrency = parseCount(arg.substring("--batch-concurrency=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--buffer-output=")) {
+                        outputBuffer = parseCount(arg.substring("--buffer-output=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--flush-interval=")) {
+                        if (outputBuffer == 0) outputBuffer = 64 * 1024;
+                        // 0 leaves output in the buffer until it's full or the run ends.
+                        flushInterval = parseLong(arg.substring("--flush-interval=".length()), 0);
+                        continue;
+                    }
+                    if (arg.startsWith("--jit-threshold=")) {
+                        tiered = true;
+                        jitThreshold = parseCount(arg.substring("--jit-threshold=".length()));
+                        continue;
+                    }
+                    if (arg.startsWith("--") || path != null) usage();
+                    path = arg;
+                }
+            }
+        }
+
+        // Only the plain tree-walker counts what a script uses.
+        if (budget != null && (useVm || useClosures || flat || tiered || specialize)) usage();
+        if (profileStacks != null) {
+            // Only the plain tree-walker is instrumented.
+            if (useVm || useClosures || flat || tiered || specialize) usage();
+            ProfilingInterpreter profiling = new ProfilingInterpreter();
+            profiler = profiling.profiler;
+            interpreter = profiling;
+        } else if (tiered) {
+            interpreter = new TieredInterpreter(jitThreshold, traceJit);
+        } else if (specialize) {
+            interpreter = new SpecializingInterpreter();
+        } else {
+            interpreter = new Interpreter();
+        }
+        if (outputBuffer > 0) {
+            out = OutputSink.buffered(outputBuffer, flushInterval);
+            // Also covers every System.exit() below.
+            Runtime.getRuntime().addShutdownHook(new Thread(out::flush));
+            diagnostics = Diagnostics.printing(out);
+        }
+        interpreter.out = out;
+        if (budget != null && batch == null) interpreter.limit(budget);
+        vm.out = out;
+        closures.out = out;
+        flatInterpreter.out = out;
+        if (batch != null) {
+            // Each script gets a fresh plain Interpreter, so engine and state options don't apply.
+            if (path != null || useVm || useClosures || flat || tiered || specialize || profileStacks != null
+                    || image != null || saveImage != null) {
+                usage();
+            }
+            runBatch();
+            return;
+        }
+        if (image != null) loadImage();
+        if (path != null) {
+            runFile(path);
         } else {
             runPrompt();
+            if (profiler != null) reportProfile();
+            if (saveImage != null) saveImage();
+        }
+    }
+
+    // The globals of whichever engine runs the program.
+    private static Environment globals() {
+        if (flat) return flatInterpreter.globals;
+        if (useVm) return vm.globals;
+        if (useClosures) return closures.globals;
+        return interpreter.globals;
+    }
+
+    private static void runBatch() {
+        List<Path> scripts;
+        try {
+            scripts = BatchRunner.scripts(batch);
+        } catch (IOException e) {
+            System.err.println(STR."Could not read batch '\{batch}': \{e.getMessage()}");
+            System.exit(66);
+            return;
+        }
+        try {
+            int status = new BatchRunner(Charset.defaultCharset(), batchConcurrency, budget).run(scripts, out);
+            if (status != 0) System.exit(status);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void loadImage() {
+        try {
+            GlobalImage.load(image, globals());
+        } catch (IOException e) {
+            System.err.println(STR."Could not load image '\{image}': \{e.getMessage()}");
+            System.exit(66);
+        }
+    }
+
+    private static void saveImage() {
+        try {
+            GlobalImage.save(saveImage, globals());
+        } catch (IOException e) {
+            System.err.println(STR."Could not save image '\{saveImage}': \{e.getMessage()}");
+            System.exit(74);
+        }
+    }
+
+    private static void reportProfile() {
+        out.flush();
+        try {
+            profiler.report(System.err, profileStacks);
+        } catch (IOException e) {
+            System.err.println(STR."Could not write profile '\{profileStacks}': \{e.getMessage()}");
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--closures] [--optimize] [--optimize-stats]\n" +
+                "            [--specialize] [--specialize-stats]\n" +
+                "            [--tiered] [--jit-threshold=N] [--trace-jit]\n" +
+                "            [--stream] [--mmap] [--compact-tokens] [--flat] [--flat-check]\n" +
+                "            [--parallel] [--cache] [--cache-dir=DIR]\n" +
+                "            [--image=FILE] [--save-image=FILE]\n" +
+                "            [--buffer-output[=BYTES]] [--flush-interval=MS]\n" +
+                "            [--profile[=FILE]] [--max-steps=N] [--max-millis=MS] [--max-bytes=N]\n" +
+                "            [filename]\n" +
+                "       jlox --batch=DIR|MANIFEST [--batch-concurrency=N] [--buffer-output[=BYTES]]\n" +
+                "            [--max-steps=N] [--max-millis=MS] [--max-bytes=N]");
+        System.exit(64);
+    }
+
+    private static Budget budget() {
+        return budget != null ? budget : Budget.UNLIMITED;
+    }
+
+    private static int parseCount(String text) {
+        try {
+            int count = Integer.parseInt(text);
+            if (count > 0) return count;
+        } catch (NumberFormatException e) {
+            // Fall through to the usage message.
+        }
+        usage();
+        return 0;
+    }
+
+    // A number no less than least, or else the usage message.
+    private static long parseLong(String text, long least) {
+        try {
+            long value = Long.parseLong(text);
+            if (value >= least) return value;
+        } catch (NumberFormatException e) {
+            // Fall through to the usage message.
         }
+        usage();
+        return 0;
     }
 
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        Scanner scanner;
+        if (mmap && Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+            scanner = new Scanner(Source.map(Paths.get(path)));
+        } else if (stream) {
+            scanner = new Scanner(new InputStreamReader(Files.newInputStream(Paths.get(path)), Charset.defaultCharset()));
+        } else {
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            String source = new String(bytes, Charset.defaultCharset());
+            if (cache && !flat) {
+                runCached(Paths.get(path), bytes, source);
+                finish();
+                return;
+            }
+            if (parallel && !flat) {
+                runParallel(source);
+                finish();
+                return;
+            }
+            scanner = new Scanner(source);
+        }
+
+        if (stream) {
+            runStream(scanner);
+        } else {
+            run(scanner);
+        }
+        finish();
+    }
+
+    // Only a run that completed without errors is saved as an image.
+    private static void finish() {
+        // A syntax error means nothing ran, so there's nothing to report.
+        if (profiler != null && !diagnostics.hadError) reportProfile();
+        if (diagnostics.hadError) System.exit(65);
+        if (diagnostics.hadRuntimeError) System.exit(70);
+        if (saveImage != null) saveImage();
+    }
+
+    private static void runCached(Path script, byte[] bytes, String source) {
+        AstCache astCache = new AstCache(script, cacheDirectory, bytes, Charset.defaultCharset());
+        LoxEvents.Phase event = begin(LoxEvents.Parse::new);
+        List<Stmt> statements = astCache.load();
+        if (statements == null) {
+            // A miss scans and parses as usual, with its own events, so this one isn't committed.
+            statements = parse(new Scanner(source));
+            // Stored before execute(), which resolves the statements in place.
+            if (!diagnostics.hadError) astCache.store(statements);
+        } else {
+            tokenCount = -1;
+            sourceSize = source.length();
+            commit(event, statements.size());
+        }
+        if (!diagnostics.hadError) execute(statements);
+    }
+
+    private static void runParallel(String source) {
+        LoxEvents.Phase event = begin(LoxEvents.Parse::new);
+        List<Stmt> statements = ParallelFrontEnd.parse(source, ForkJoinPool.commonPool());
+        if (statements == null) {
+            // Parse again on one thread to report the errors exactly as run() would.
+            run(new Scanner(source));
+        } else {
+            tokenCount = -1;
+            sourceSize = source.length();
+            commit(event, statements.size());
+            execute(statements);
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -35,22 +359,140 @@ public class Lox {
         BufferedReader reader = new BufferedReader(input);
 
         while (true) {
-            System.out.print(">> ");
+            out.print(">> ");
+            out.flush();
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            run(new Scanner(line));
+            diagnostics.hadError = false;
+        }
+    }
+
+    private static void run(Scanner scanner) {
+        if (flat) {
+            runFlat(scanner);
+            return;
         }
+        List<Stmt> statements = parse(scanner);
+        if (diagnostics.hadError) return;
+        execute(statements);
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
+    private static List<Stmt> parse(Scanner scanner) {
+        LoxEvents.Phase scan = begin(LoxEvents.Scan::new);
+        Parser parser;
+        if (compactTokens) {
+            TokenBuffer tokens = scanner.scanBuffer();
+            tokenCount = tokens.size();
+            parser = new Parser(tokens);
+        } else {
+            List<Token> tokens = scanner.scanTokens();
+            tokenCount = tokens.size();
+            parser = new Parser(tokens);
+        }
+        sourceSize = scanner.sourceSize();
+        commit(scan, -1);
+
+        LoxEvents.Phase parse = begin(LoxEvents.Parse::new);
         List<Stmt> statements = parser.parse();
+        commit(parse, statements.size());
+        return statements;
+    }
+
+    // Always scans into a TokenBuffer, so no Token objects are made on the way to the arena either.
+    private static void runFlat(Scanner scanner) {
+        LoxEvents.Phase scan = begin(LoxEvents.Scan::new);
+        TokenBuffer tokens = scanner.scanBuffer();
+        tokenCount = tokens.size();
+        sourceSize = scanner.sourceSize();
+        commit(scan, -1);
+
+        LoxEvents.Phase parse = begin(LoxEvents.Parse::new);
+        FlatAst ast = new FlatParser(tokens).parse();
+        commit(parse, ast.programCount);
+        if (diagnostics.hadError) return;
+
+        if (flatCheck && !FlatAst.of(new Parser(tokens).parse()).sameAs(ast)) {
+            System.err.println("[flat] parsed arena doesn't match the converted object AST");
+        }
+        LoxEvents.Phase resolve = begin(LoxEvents.Resolve::new);
+        ast.resolve();
+        commit(resolve, ast.programCount);
+
+        LoxEvents.Phase execute = begin(LoxEvents.Execute::new);
+        flatInterpreter.interpret(ast);
+        commit(execute, ast.programCount);
+    }
 
-        if (hadError) return;
-        interpreter.interpret(statements);
+    // Starts a phase event, or returns null when JFR isn't running.
+    private static LoxEvents.Phase begin(Supplier<LoxEvents.Phase> event) {
+        if (!LoxEvents.enabled()) return null;
+        LoxEvents.Phase phase = event.get();
+        phase.begin();
+        return phase;
+    }
+
+    // Ends a phase event and, if JFR is recording it, fills it in and commits it.
+    private static void commit(LoxEvents.Phase event, int statements) {
+        if (event == null) return;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.tokens = tokenCount;
+        event.statements = statements;
+        event.sourceSize = sourceSize;
+        event.hadError = diagnostics.hadError;
+        event.hadRuntimeError = diagnostics.hadRuntimeError;
+        event.commit();
+    }
+
+    // Runs each top-level statement as soon as it's parsed, while the file is still
+    // being read, so memory is bounded by the largest statement rather than the file.
+    // Unlike run(), statements before a syntax error have already run by the time
+    // it's found. Nothing runs after it or after a runtime error.
+    private static void runStream(Scanner scanner) {
+        Parser parser = new Parser(scanner);
+        while (parser.hasNext()) {
+            Stmt statement = parser.next();
+            if (diagnostics.hadError || diagnostics.hadRuntimeError) continue;
+            execute(List.of(statement));
+        }
+    }
+
+    private static void execute(List<Stmt> statements) {
+        if (optimize) {
+            int before = optimizeStats ? Optimizer.countNodes(statements) : 0;
+            statements = new Optimizer().optimize(statements);
+            if (optimizeStats) {
+                System.err.println(STR."[optimizer] \{before} nodes before, \{Optimizer.countNodes(statements)} after");
+            }
+        }
+        int count = statements.size();
+        LoxEvents.Phase resolve = begin(LoxEvents.Resolve::new);
+        if (useVm) {
+            Chunk chunk = new Compiler().compile(statements);
+            commit(resolve, count);
+            LoxEvents.Phase execute = begin(LoxEvents.Execute::new);
+            vm.interpret(chunk);
+            commit(execute, count);
+            return;
+        }
+        new Resolver().resolve(statements);
+        commit(resolve, count);
+
+        LoxEvents.Phase execute = begin(LoxEvents.Execute::new);
+        if (useClosures) {
+            closures.interpret(statements);
+        } else {
+            try {
+                interpreter.interpret(statements);
+            } catch (BudgetExceeded e) {
+                currentDiagnostics().budgetExceeded(e);
+            }
+        }
+        commit(execute, count);
+        if (!useClosures && specializeStats && interpreter instanceof SpecializingInterpreter specializing) {
+            System.err.println(STR."[specializer] \{specializing.specialized} nodes specialized, \{specializing.deoptimized} deoptimized");
+        }
     }
 
     static void error(int line, String message) {
@@ -66,12 +508,37 @@ public class Lox {
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(STR."\{error.getMessage()} \n[line \{error.token.line}]");
-        hadRuntimeError = true;
+        currentDiagnostics().runtimeError(error);
+    }
+
+    // Runs work with its errors going to target instead of where they'd go otherwise.
+    static <T> T reportingTo(Diagnostics target, Supplier<T> work) {
+        Diagnostics previous = reporting.get();
+        reporting.set(target);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                reporting.remove();
+            } else {
+                reporting.set(previous);
+            }
+        }
+    }
+
+    // Runs work with errors not printed. Returns null if there were any.
+    static <T> T withoutReporting(Supplier<T> work) {
+        Diagnostics collected = new Diagnostics();
+        T result = reportingTo(collected, work);
+        return collected.hadError ? null : result;
     }
 
     static void report(int line, String where, String message) {
-        System.out.println(STR."[\{line}] Error \{where}: \{message}");
-        hadError = true;
+        currentDiagnostics().syntaxError(line, where, message);
+    }
+
+    private static Diagnostics currentDiagnostics() {
+        Diagnostics bound = reporting.get();
+        return bound != null ? bound : diagnostics;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for what Lox is doing, under the "Lox" category.
+ * They're only made once JFR is running, and only filled in when shouldCommit()
+ * says it's recording them, so they cost nothing otherwise. The README lists
+ * them.
+ */
+final class LoxEvents {
+    private LoxEvents() {}
+
+    // Making the first event starts JFR, which takes a few hundred milliseconds even
+    // with nothing recording. A recording started by -XX:StartFlightRecording or jcmd
+    // has already started it.
+    static boolean enabled() {
+        return FlightRecorder.isInitialized();
+    }
+
+    // Stack traces would point into Lox.java, which is the same for every phase.
+    @Category("Lox")
+    @StackTrace(false)
+    abstract static class Phase extends Event {
+        @Label("Tokens")
+        @Description("Tokens scanned, or -1 if this run didn't scan them one by one")
+        int tokens = -1;
+
+        @Label("Statements")
+        @Description("Top-level statements, or -1 if not parsed yet")
+        int statements = -1;
+
+        @Label("Source Size")
+        @Description("Length of the source: characters, or bytes for a memory-mapped file. -1 if unknown")
+        long sourceSize = -1;
+
+        @Label("Had Error")
+        @Description("Whether a syntax error has been reported")
+        boolean hadError;
+
+        @Label("Had Runtime Error")
+        @Description("Whether a runtime error has been reported")
+        boolean hadRuntimeError;
+    }
+
+    @Name("lox.Scan")
+    @Label("Lox Scan")
+    @Description("Scanning a source into tokens")
+    static final class Scan extends Phase {}
+
+    @Name("lox.Parse")
+    @Label("Lox Parse")
+    @Description("Parsing tokens into statements. With --cache or --parallel, scanning is included")
+    static final class Parse extends Phase {}
+
+    @Name("lox.Resolve")
+    @Label("Lox Resolve")
+    @Description("Resolving variables to slots, or compiling to bytecode for --vm")
+    static final class Resolve extends Phase {}
+
+    @Name("lox.Execute")
+    @Label("Lox Execute")
+    @Description("Running statements")
+    static final class Execute extends Phase {}
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Description("A runtime error, sampled at most once every 10 ms")
+    @Category("Lox")
+    static final class RuntimeError extends Event {
+        private static final long INTERVAL_NANOS = 10_000_000;
+        private static final AtomicLong last = new AtomicLong(System.nanoTime() - INTERVAL_NANOS);
+        private static final AtomicLong unrecorded = new AtomicLong();
+
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+
+        @Label("Skipped")
+        @Description("Runtime errors since the previous event that weren't recorded")
+        long skipped;
+
+        // Records the error unless one was recorded less than INTERVAL_NANOS ago.
+        static void sample(lox.RuntimeError error) {
+            if (!enabled()) return;
+            RuntimeError event = new RuntimeError();
+            if (!event.isEnabled()) return;
+            long now = System.nanoTime();
+            long previous = last.get();
+            if (now - previous < INTERVAL_NANOS || !last.compareAndSet(previous, now)) {
+                unrecorded.incrementAndGet();
+                return;
+            }
+            event.message = error.getMessage();
+            event.line = error.line;
+            event.skipped = unrecorded.getAndSet(0);
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package lox;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a number the way print shows it, as ASCII bytes into a caller's
+ * array, without making any String on the way. That's the shortest decimal
+ * that reads back as the same double, laid out like Double.toString() (which
+ * uses the same algorithm) but without the ".0" of integral values: 3, 0.5,
+ * -0, 1.0E21, 2.5E-5, NaN, Infinity.
+ *
+ * The digits come from Schubfach (Raffaello Giulietti, "The Schubfach way to
+ * render doubles", 2020), following the structure of the JDK's
+ * DoubleToDecimal. Its table of powers of ten is PowersOfTen, which
+ * tool.GeneratePowersOfTen writes.
+ */
+final class NumberFormatter {
+    // Enough for the longest result, "-0.00" and 17 digits, or "-", 17 digits, "." and "E-324".
+    static final int MAX_LENGTH = 32;
+
+    private static final int P = 53;            // significand bits, with the hidden one
+    private static final int Q_MIN = -1074;     // exponent of the smallest subnormal
+    private static final long C_MIN = 1L << (P - 1);
+    private static final int C_TINY = 3;        // subnormals below this need an extra digit
+    private static final int H = 17;            // most digits ever needed
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final int MASK_28 = (1 << 28) - 1;
+
+    private static final long[] POW10 = new long[H + 1];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= H; i++) POW10[i] = 10 * POW10[i - 1];
+    }
+
+    private NumberFormatter() {}
+
+    static String toString(double value) {
+        byte[] bytes = new byte[MAX_LENGTH];
+        int length = format(value, bytes, 0);
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // Writes value into out starting at index at, which must have MAX_LENGTH bytes of room.
+    // Returns the index after the last byte written.
+    static int format(double value, byte[] out, int at) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> (P - 1)) & 0x7ff;
+        if (bq == 0x7ff) {
+            String text = t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity";
+            for (int i = 0; i < text.length(); i++) out[at++] = (byte) text.charAt(i);
+            return at;
+        }
+
+        if (bits < 0) out[at++] = '-';
+        if (bq != 0) {
+            // Normal: value = c 2^-mq.
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            // Integers below 2^53 are already their own shortest digits.
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) return digits(f, 0, out, at);
+            }
+            return decimal(-mq, c, 0, out, at);
+        }
+        if (t != 0) {
+            return t < C_TINY ? decimal(Q_MIN, 10 * t, -1, out, at) : decimal(Q_MIN, t, 0, out, at);
+        }
+        out[at++] = '0';
+        return at;
+    }
+
+    // Finds the shortest digits for c 2^q and writes them, times 10^dk.
+    private static int decimal(int q, long c, int dk, byte[] out, int at) {
+        int odd = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        // The interval of values that round to c 2^q is narrower below a power of two.
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = PowersOfTen.G[2 * (k - PowersOfTen.K_MIN)];
+        long g0 = PowersOfTen.G[2 * (k - PowersOfTen.K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try one digit fewer first.
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + odd <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + odd <= vbr;
+            if (upin != wpin) return digits(upin ? sp10 : tp10, k, out, at);
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + odd <= s << 2;
+        boolean win = (t << 2) + odd <= vbr;
+        if (uin != win) return digits(uin ? s : t, k + dk, out, at);
+        // Both in range: take the closer, or the even one on a tie.
+        long cmp = vb - (s + t << 1);
+        return digits(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, at);
+    }
+
+    // Rounds g cp / 2^127 to odd, where g = g1 2^63 + g0.
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    // Lays out f 10^e, plain between 10^-3 and 10^7 and in E notation outside.
+    private static int digits(long f, int e, byte[] out, int at) {
+        int length = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+        if (f >= POW10[length]) length++;
+        // Now f 10^e = 0.f 10^e with exactly H digits in f.
+        f *= POW10[H - length];
+        e += length;
+
+        // The first digit, then two runs of eight, so the rest can be done in ints.
+        long hm = Math.multiplyHigh(f, 193_428_131_138_340_668L) >>> 20;
+        int l = (int) (f - 100_000_000L * hm);
+        int h = (int) (hm * 1_441_151_881L >>> 57);
+        int m = (int) (hm - 100_000_000 * h);
+
+        if (0 < e && e <= 7) {
+            out[at++] = (byte) ('0' + h);
+            int y = fraction(m);
+            int i = 1;
+            for (; i < e; i++) {
+                int digit = 10 * y;
+                out[at++] = (byte) ('0' + (digit >>> 28));
+                y = digit & MASK_28;
+            }
+            out[at++] = '.';
+            for (; i <= 8; i++) {
+                int digit = 10 * y;
+                out[at++] = (byte) ('0' + (digit >>> 28));
+                y = digit & MASK_28;
+            }
+            at = lowDigits(l, out, at);
+            // An integral value loses the point as well, where Double.toString() would keep ".0".
+            if (out[at - 1] == '.') at--;
+            return at;
+        }
+        if (-3 < e && e <= 0) {
+            out[at++] = '0';
+            out[at++] = '.';
+            for (; e < 0; e++) out[at++] = '0';
+            out[at++] = (byte) ('0' + h);
+            at = eightDigits(m, out, at);
+            return lowDigits(l, out, at);
+        }
+
+        out[at++] = (byte) ('0' + h);
+        out[at++] = '.';
+        at = eightDigits(m, out, at);
+        at = lowDigits(l, out, at);
+        // Like Double.toString(), E notation always has a digit after the point.
+        if (out[at - 1] == '.') out[at++] = '0';
+        return exponent(e - 1, out, at);
+    }
+
+    // Writes the last eight digits, then drops the trailing zeroes.
+    private static int lowDigits(int l, byte[] out, int at) {
+        if (l != 0) at = eightDigits(l, out, at);
+        while (out[at - 1] == '0') at--;
+        return at;
+    }
+
+    private static int eightDigits(int m, byte[] out, int at) {
+        int y = fraction(m);
+        for (int i = 0; i < 8; i++) {
+            int digit = 10 * y;
+            out[at++] = (byte) ('0' + (digit >>> 28));
+            y = digit & MASK_28;
+        }
+        return at;
+    }
+
+    // m / 10^8 as a 28-bit fixed-point fraction, so each next digit is one multiply by 10.
+    private static int fraction(int m) {
+        return (int) (Math.multiplyHigh((long) (m + 1) << 28, 193_428_131_138_340_668L) >>> 20) - 1;
+    }
+
+    private static int exponent(int e, byte[] out, int at) {
+        out[at++] = 'E';
+        if (e < 0) {
+            out[at++] = '-';
+            e = -e;
+        }
+        if (e >= 100) out[at++] = (byte) ('0' + e / 100);
+        if (e >= 10) out[at++] = (byte) ('0' + e / 10 % 10);
+        out[at++] = (byte) ('0' + e % 10);
+        return at;
+    }
+
+    // floor(q log10(2)), floor(q log10(3/4 2^q)) and floor(e log2(10)), for the ranges used here.
+    private static int flog10pow2(int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
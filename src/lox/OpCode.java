@@ -0,0 +1,32 @@
+package lox;
+
+// Instructions are stored as ints in a Chunk. Operands follow their opcode.
+final class OpCode {
+    static final int CONSTANT = 0;       // [index] -> push constants[index]
+    static final int NIL = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+    static final int GET_LOCAL = 5;      // [slot]
+    static final int SET_LOCAL = 6;      // [slot]
+    static final int GET_GLOBAL = 7;     // [name constant]
+    static final int DEFINE_GLOBAL = 8;  // [name constant]
+    static final int SET_GLOBAL = 9;     // [name constant]
+    static final int EQUAL = 10;
+    static final int NOT_EQUAL = 11;
+    static final int GREATER = 12;
+    static final int GREATER_EQUAL = 13;
+    static final int LESS = 14;
+    static final int LESS_EQUAL = 15;
+    static final int ADD = 16;
+    static final int SUBTRACT = 17;
+    static final int MULTIPLY = 18;
+    static final int DIVIDE = 19;
+    static final int NOT = 20;
+    static final int NEGATE = 21;
+    static final int PRINT = 22;
+    static final int POPN = 23;          // [count]
+    static final int RETURN = 24;
+
+    private OpCode() {}
+}
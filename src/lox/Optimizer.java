@@ -0,0 +1,190 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the parsed statements before they are resolved and run:
+ * folds operators whose operands are literals, drops Grouping nodes,
+ * applies identities that can't change a result or an error, and removes
+ * statements that have no effect.
+ */
+class Optimizer implements Expr.Visitor<Expr> {
+    // Folding evaluates nodes with the interpreter itself, so folded results are
+    // exactly what it would have computed. If it would throw, the node is left
+    // alone so the error is still reported at runtime, in order.
+    private final Interpreter folder = new Interpreter();
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        for (Stmt statement : statements) {
+            optimize(statement, optimized);
+        }
+        return optimized;
+    }
+
+    private void optimize(Stmt stmt, List<Stmt> into) {
+        switch (stmt) {
+            case Stmt.Expression expression -> {
+                Expr expr = optimize(expression.expression);
+                // A literal can't fail or have side effects, so the statement does nothing.
+                if (expr instanceof Expr.Literal) return;
+                into.add(expr == expression.expression ? stmt : new Stmt.Expression(expr, expression.line));
+            }
+            case Stmt.Print print -> {
+                Expr expr = optimize(print.expression);
+                into.add(expr == print.expression ? stmt : new Stmt.Print(expr, print.line));
+            }
+            case Stmt.Var var -> {
+                if (var.initializer == null) {
+                    into.add(stmt);
+                    return;
+                }
+                Expr initializer = optimize(var.initializer);
+                into.add(initializer == var.initializer ? stmt : new Stmt.Var(var.name, initializer));
+            }
+            case Stmt.Block block -> {
+                List<Stmt> statements = optimize(block.statements);
+                // Without declarations the block's scope is unobservable, so its
+                // statements can run directly in the enclosing one.
+                if (statements.stream().noneMatch(statement -> statement instanceof Stmt.Var)) {
+                    into.addAll(statements);
+                } else {
+                    into.add(new Stmt.Block(statements, block.line));
+                }
+            }
+            default -> into.add(stmt);
+        }
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        Expr.Unary unary = right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+        if (right instanceof Expr.Literal) return fold(unary);
+
+        if (right instanceof Expr.Unary inner && inner.operator.type == expr.operator.type) {
+            // -(-x) is x when x is already a number, and !(!x) is x when x is already a boolean.
+            if (expr.operator.type == TokenType.MINUS && isNumeric(inner.right)) return inner.right;
+            if (expr.operator.type == TokenType.BANG && isBoolean(inner.right)) return inner.right;
+        }
+        return unary;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Expr.Binary binary = left == expr.left && right == expr.right
+                ? expr : new Expr.Binary(left, expr.operator, right);
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) return fold(binary);
+
+        // Identities that hold for every number, including -0 and NaN. The other
+        // operand must be known to be a number, or we'd drop its type check.
+        switch (expr.operator.type) {
+            case TokenType.MINUS, TokenType.SLASH -> {
+                double identity = expr.operator.type == TokenType.MINUS ? 0.0 : 1.0;
+                if (isNumeric(left) && isLiteral(right, identity)) return left;
+            }
+            case TokenType.STAR -> {
+                if (isNumeric(left) && isLiteral(right, 1.0)) return left;
+                if (isLiteral(left, 1.0) && isNumeric(right)) return right;
+            }
+            default -> {}
+        }
+        return binary;
+    }
+
+    private Expr fold(Expr expr) {
+        try {
+            return new Expr.Literal(folder.evaluate(expr));
+        } catch (RuntimeError error) {
+            return expr;
+        }
+    }
+
+    private boolean isLiteral(Expr expr, double value) {
+        return expr instanceof Expr.Literal literal && Double.valueOf(value).equals(literal.value);
+    }
+
+    // Whether expr either evaluates to a number or throws by itself.
+    private boolean isNumeric(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value instanceof Double;
+            case Expr.Unary unary -> unary.operator.type == TokenType.MINUS;
+            case Expr.Binary binary -> switch (binary.operator.type) {
+                case TokenType.MINUS, TokenType.STAR, TokenType.SLASH -> true;
+                case TokenType.PLUS -> isNumeric(binary.left) && isNumeric(binary.right);
+                default -> false;
+            };
+            default -> false;
+        };
+    }
+
+    // Whether expr either evaluates to a boolean or throws by itself.
+    private boolean isBoolean(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value instanceof Boolean;
+            case Expr.Unary unary -> unary.operator.type == TokenType.BANG;
+            case Expr.Binary binary -> switch (binary.operator.type) {
+                case TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL,
+                     TokenType.EQUAL_EQUAL, TokenType.BANG_EQUAL -> true;
+                default -> false;
+            };
+            default -> false;
+        };
+    }
+
+    static int countNodes(List<Stmt> statements) {
+        int count = 0;
+        for (Stmt statement : statements) {
+            count += countNodes(statement);
+        }
+        return count;
+    }
+
+    private static int countNodes(Stmt stmt) {
+        return 1 + switch (stmt) {
+            case Stmt.Expression expression -> countNodes(expression.expression);
+            case Stmt.Print print -> countNodes(print.expression);
+            case Stmt.Var var -> var.initializer == null ? 0 : countNodes(var.initializer);
+            case Stmt.Block block -> countNodes(block.statements);
+            default -> 0;
+        };
+    }
+
+    private static int countNodes(Expr expr) {
+        return 1 + switch (expr) {
+            case Expr.Binary binary -> countNodes(binary.left) + countNodes(binary.right);
+            case Expr.Grouping grouping -> countNodes(grouping.expression);
+            case Expr.Unary unary -> countNodes(unary.right);
+            case Expr.Assign assign -> countNodes(assign.value);
+            default -> 0;
+        };
+    }
+}
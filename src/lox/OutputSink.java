@@ -0,0 +1,198 @@
+package lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where print statements (and syntax errors) write to. By default that's
+ * System.out, which writes through on every line. A buffered sink instead
+ * encodes into one reusable byte buffer and writes it to the stdout channel
+ * when it fills up, when it's flushed, and every flush interval if anything
+ * is waiting.
+ */
+abstract class OutputSink {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    abstract void print(String text);
+
+    void println(String line) {
+        print(line);
+        print(System.lineSeparator());
+    }
+
+    // Prints a Lox value and a newline, as a print statement does.
+    void printValue(Object value) {
+        println(Interpreter.stringify(value));
+    }
+
+    abstract void flush();
+
+    static OutputSink of(PrintStream stream) {
+        return new OutputSink() {
+            private final byte[] number = new byte[NumberFormatter.MAX_LENGTH + LINE_SEPARATOR.length];
+
+            // Numbers are formatted as bytes and go out in one write, without a String.
+            @Override
+            synchronized void printValue(Object value) {
+                if (!(value instanceof Double d)) {
+                    super.printValue(value);
+                    return;
+                }
+                int end = NumberFormatter.format(d, number, 0);
+                System.arraycopy(LINE_SEPARATOR, 0, number, end, LINE_SEPARATOR.length);
+                stream.write(number, 0, end + LINE_SEPARATOR.length);
+            }
+
+            @Override
+            void print(String text) {
+                stream.print(text);
+            }
+
+            @Override
+            void println(String line) {
+                stream.println(line);
+            }
+
+            @Override
+            void flush() {
+                stream.flush();
+            }
+        };
+    }
+
+    static OutputSink stdout() {
+        return of(System.out);
+    }
+
+    // For a Context, which may print into a StringBuilder or anything else that takes characters.
+    static OutputSink of(Appendable appendable) {
+        if (appendable instanceof PrintStream stream) return of(stream);
+        return new OutputSink() {
+            @Override
+            void print(String text) {
+                try {
+                    appendable.append(text);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            void flush() {
+                if (!(appendable instanceof Flushable flushable)) return;
+                try {
+                    flushable.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    // A flushInterval of 0 means output only goes out when the buffer is full or flushed.
+    static OutputSink buffered(int size, long flushIntervalMillis) {
+        WritableByteChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+        // Always room for a whole number, which is formatted straight into the buffer.
+        size = Math.max(size, NumberFormatter.MAX_LENGTH + LINE_SEPARATOR.length);
+        return new Buffered(channel, System.out.charset(), size, flushIntervalMillis);
+    }
+
+    private static class Buffered extends OutputSink {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer buffer;
+
+        Buffered(WritableByteChannel channel, Charset charset, int size, long flushIntervalMillis) {
+            this.channel = channel;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.buffer = ByteBuffer.allocate(size);
+            if (flushIntervalMillis > 0) {
+                Thread.ofPlatform().daemon().name("lox-output-flusher").start(() -> {
+                    while (true) {
+                        try {
+                            Thread.sleep(flushIntervalMillis);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        flush();
+                    }
+                });
+            }
+        }
+
+        @Override
+        synchronized void print(String text) {
+            // ASCII goes straight into the buffer, a byte per character.
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    encode(text, i);
+                    return;
+                }
+                if (!buffer.hasRemaining()) drain();
+                buffer.put((byte) c);
+            }
+        }
+
+        @Override
+        synchronized void printValue(Object value) {
+            if (!(value instanceof Double d)) {
+                super.printValue(value);
+                return;
+            }
+            if (buffer.remaining() < NumberFormatter.MAX_LENGTH + LINE_SEPARATOR.length) drain();
+            int end = NumberFormatter.format(d, buffer.array(), buffer.position());
+            buffer.position(end);
+            buffer.put(LINE_SEPARATOR);
+        }
+
+        // Encodes the rest of text from start, draining the buffer as often as it fills.
+        private void encode(String text, int start) {
+            CharBuffer chars = CharBuffer.wrap(text, start, text.length());
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (encoder.flush(buffer).isOverflow()) {
+                    drain();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        synchronized void flush() {
+            if (buffer.position() > 0) drain();
+        }
+
+        private void drain() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+}
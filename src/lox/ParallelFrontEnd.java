@@ -0,0 +1,91 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Scans and parses a large source in pieces on several threads. The source is
+ * split right after a ';' or '}' at brace depth 0, outside any string or
+ * comment. In a valid program that's always the end of a top-level
+ * declaration, so parsing the pieces separately and joining the results gives
+ * the same statements as parsing the whole.
+ */
+final class ParallelFrontEnd {
+    // Below this it isn't worth the threads.
+    private static final int MIN_PIECE = 64 * 1024;
+
+    private record Piece(String text, int line) {}
+
+    private ParallelFrontEnd() {}
+
+    /**
+     * Returns the parsed statements, or null if any piece had a syntax error.
+     * Errors found here aren't reported. The caller parses the source again
+     * on one thread, so the diagnostics and recovery are the sequential ones.
+     */
+    static List<Stmt> parse(String source, ForkJoinPool pool) {
+        List<Piece> pieces = split(source, Math.max(MIN_PIECE, source.length() / (pool.getParallelism() * 4)));
+
+        List<ForkJoinTask<List<Stmt>>> tasks = new ArrayList<>();
+        for (Piece piece : pieces) {
+            tasks.add(pool.submit(() -> parse(piece)));
+        }
+
+        List<Stmt> statements = new ArrayList<>();
+        for (ForkJoinTask<List<Stmt>> task : tasks) {
+            List<Stmt> parsed = task.join();
+            if (parsed == null) return null;
+            statements.addAll(parsed);
+        }
+        return statements;
+    }
+
+    private static List<Stmt> parse(Piece piece) {
+        try {
+            return Lox.withoutReporting(() -> new Parser(new Scanner(piece.text(), piece.line()).scanTokens()).parse());
+        } catch (RuntimeException e) {
+            // Whatever went wrong, it will go wrong the same way on one thread.
+            return null;
+        }
+    }
+
+    private static List<Piece> split(String source, int size) {
+        List<Piece> pieces = new ArrayList<>();
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        int depth = 0;
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i++);
+            switch (c) {
+                case '\n' -> line++;
+                case '"' -> {
+                    while (i < source.length() && source.charAt(i) != '"') {
+                        if (source.charAt(i) == '\n') line++;
+                        i++;
+                    }
+                    i++;
+                }
+                case '/' -> {
+                    if (i < source.length() && source.charAt(i) == '/') {
+                        while (i < source.length() && source.charAt(i) != '\n') i++;
+                    }
+                }
+                case '{' -> depth++;
+                // Unbalanced braces are a syntax error. The depth can't go negative
+                // or no split would ever be found again.
+                case '}' -> depth = Math.max(0, depth - 1);
+            }
+            if ((c == ';' || c == '}') && depth == 0 && i - start >= size && i < source.length()) {
+                pieces.add(new Piece(source.substring(start, i), startLine));
+                start = i;
+                startLine = line;
+            }
+        }
+        pieces.add(new Piece(source.substring(start), startLine));
+        return pieces;
+    }
+}
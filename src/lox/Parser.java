@@ -6,21 +6,44 @@ import java.util.List;
 class Parser {
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenCursor tokens;
 
     Parser(List<Token> tokens) {
+        this.tokens = TokenCursor.of(tokens.iterator()::next);
+    }
+
+    // Pulls tokens from the scanner as it goes, instead of from a scanned list.
+    Parser(Scanner scanner) {
+        this.tokens = TokenCursor.of(scanner::nextToken);
+    }
+
+    Parser(TokenBuffer tokens) {
+        this.tokens = tokens.cursor();
+    }
+
+    // For a caller that needs to see how far each declaration read.
+    Parser(TokenCursor tokens) {
         this.tokens = tokens;
     }
 
     List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
-        while (!isAtEnd()) {
-            statements.add(declaration());
+        while (hasNext()) {
+            statements.add(next());
         }
         return statements;
     }
 
+    // For running each top-level declaration as soon as it's parsed.
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    // Parses the next top-level declaration. Returns null if it had a syntax error.
+    Stmt next() {
+        return declaration();
+    }
+
     private Stmt declaration() {
         try {
             if (match(TokenType.VAR)) return varDeclaration();
@@ -32,7 +55,8 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
+        consume(TokenType.IDENTIFIER, "Expect variable name.");
+        Token name = previous();
         Expr initializer = null;
         if (match(TokenType.EQUAL)) {
             initializer = expression();
@@ -43,21 +67,26 @@ class Parser {
 
     private Stmt statement() {
         if (match(TokenType.PRINT)) return printStatement();
-        if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
+        if (match(TokenType.LEFT_BRACE)) {
+            int line = tokens.previousLine();
+            return new Stmt.Block(block(), line);
+        }
 
         return expressionStatement();
     }
 
     private Stmt printStatement() {
+        int line = tokens.previousLine();
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(expr);
+        return new Stmt.Print(expr, line);
     }
 
     private Stmt expressionStatement() {
+        int line = tokens.currentLine();
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Expect ';' after expression.");
-        return new Stmt.Expression(expr);
+        return new Stmt.Expression(expr, line);
     }
 
     private List<Stmt> block() {
@@ -142,7 +171,8 @@ class Parser {
         if (match(TokenType.NIL)) return new Expr.Literal(null);
 
         if (match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(previous().literal);
+            // The value alone, so a compact TokenBuffer doesn't build a Token and copy out the lexeme.
+            return new Expr.Literal(tokens.previousValue());
         }
         if (match(TokenType.IDENTIFIER)) return new Expr.Variable(previous());
 
@@ -166,31 +196,33 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
         throw error(peek(), message);
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type() == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.type() == TokenType.EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.current();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     private ParseError error(Token token, String message) {
@@ -202,9 +234,9 @@ class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
+            if (tokens.previousType() == TokenType.SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.type()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -0,0 +1,187 @@
+package lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts and times each statement and expression of a running program, for
+ * --profile. Time spent in a node is split into its own (self) time and the
+ * time of the nodes it ran, so the hot-line report adds up self time per
+ * source line, and the collapsed stacks can be fed to flamegraph.pl or
+ * speedscope as they are, one "frame;frame;frame nanoseconds" per line.
+ */
+final class Profiler {
+    private static final int HOT_LINES = 20;
+
+    private static final class Site {
+        final String frame;
+        final int line;
+        long count = 0;
+        long selfNanos = 0;
+
+        Site(String frame, int line) {
+            this.frame = frame;
+            this.line = line;
+        }
+    }
+
+    // A node as reached through a particular chain of enclosing nodes.
+    private static final class CallPath {
+        final Site site;
+        final Map<Site, CallPath> children = new HashMap<>();
+        long selfNanos = 0;
+
+        CallPath(Site site) {
+            this.site = site;
+        }
+    }
+
+    private static final class Frame {
+        Object node;
+        Site site;
+        CallPath path;
+        long start;
+        long childNanos;
+    }
+
+    private final Map<Object, Site> sites = new IdentityHashMap<>();
+    private final CallPath root = new CallPath(null);
+    // The nodes running now, innermost last. Frames are reused.
+    private Frame[] stack = new Frame[64];
+    private int depth = 0;
+    private long totalNanos = 0;
+
+    void enter(Object node) {
+        Frame parent = depth == 0 ? null : stack[depth - 1];
+        Site site = sites.get(node);
+        if (site == null) {
+            // Literals have no token, so they count towards their parent's line.
+            int line = line(node);
+            if (line < 0 && parent != null) line = parent.site.line;
+            site = new Site(STR."\{label(node)} (line \{line < 0 ? "?" : line})", line);
+            sites.put(node, site);
+        }
+        CallPath path = (parent == null ? root : parent.path).children.computeIfAbsent(site, CallPath::new);
+
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        Frame frame = stack[depth];
+        if (frame == null) frame = stack[depth] = new Frame();
+        depth++;
+        frame.node = node;
+        frame.site = site;
+        frame.path = path;
+        frame.childNanos = 0;
+        frame.start = System.nanoTime();
+    }
+
+    void exit() {
+        long elapsed = System.nanoTime() - stack[depth - 1].start;
+        Frame frame = stack[--depth];
+        long self = elapsed - frame.childNanos;
+        frame.site.count++;
+        frame.site.selfNanos += self;
+        frame.path.selfNanos += self;
+        frame.node = null;
+        if (depth > 0) {
+            stack[depth - 1].childNanos += elapsed;
+        } else {
+            totalNanos += elapsed;
+        }
+    }
+
+    // The node entered last and not exited yet, or null.
+    Object current() {
+        return depth == 0 ? null : stack[depth - 1].node;
+    }
+
+    // Prints the lines with the most self time to err, and writes the collapsed stacks to file.
+    void report(PrintStream err, Path file) throws IOException {
+        Map<Integer, List<Site>> byLine = new HashMap<>();
+        long executions = 0;
+        for (Site site : sites.values()) {
+            byLine.computeIfAbsent(site.line, line -> new ArrayList<>()).add(site);
+            executions += site.count;
+        }
+        List<Map.Entry<Integer, List<Site>>> lines = new ArrayList<>(byLine.entrySet());
+        lines.sort(Comparator.comparingLong((Map.Entry<Integer, List<Site>> entry) -> selfNanos(entry.getValue())).reversed());
+
+        err.println(STR."[profile] \{millis(totalNanos)} ms in \{executions} node executions. Self time by line:");
+        err.println(String.format("%8s %12s %7s %12s  %s", "line", "self ms", "%", "executions", "hottest"));
+        for (Map.Entry<Integer, List<Site>> entry : lines.subList(0, Math.min(HOT_LINES, lines.size()))) {
+            List<Site> sites = entry.getValue();
+            long self = selfNanos(sites);
+            long count = sites.stream().mapToLong(site -> site.count).sum();
+            Site hottest = sites.stream().max(Comparator.comparingLong(site -> site.selfNanos)).orElseThrow();
+            double percent = totalNanos == 0 ? 0 : 100.0 * self / totalNanos;
+            String line = entry.getKey() < 0 ? "?" : entry.getKey().toString();
+            err.println(String.format("%8s %12s %6.1f%% %12d  %s", line, millis(self), percent, count, hottest.frame));
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (CallPath child : root.children.values()) {
+                writeStacks(writer, child, child.site.frame);
+            }
+        }
+        err.println(STR."[profile] collapsed stacks written to \{file}");
+    }
+
+    private static void writeStacks(BufferedWriter writer, CallPath path, String stack) throws IOException {
+        if (path.selfNanos > 0) {
+            writer.write(STR."\{stack} \{path.selfNanos}");
+            writer.newLine();
+        }
+        for (CallPath child : path.children.values()) {
+            writeStacks(writer, child, STR."\{stack};\{child.site.frame}");
+        }
+    }
+
+    private static long selfNanos(List<Site> sites) {
+        return sites.stream().mapToLong(site -> site.selfNanos).sum();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    private static String label(Object node) {
+        return switch (node) {
+            case Stmt.Expression expression -> "expression";
+            case Stmt.Print print -> "print";
+            case Stmt.Var var -> STR."var \{var.name.lexeme}";
+            case Stmt.Block block -> "block";
+            case Expr.Literal literal -> "literal";
+            case Expr.Grouping grouping -> "group";
+            case Expr.Variable variable -> variable.name.lexeme;
+            case Expr.Assign assign -> STR."\{assign.name.lexeme} =";
+            case Expr.Unary unary -> unary.operator.lexeme;
+            case Expr.Binary binary -> binary.operator.lexeme;
+            default -> node.getClass().getSimpleName();
+        };
+    }
+
+    // The line a statement starts on, or of an expression's own token, or -1 for a literal.
+    static int line(Object node) {
+        return switch (node) {
+            case Stmt.Expression expression -> expression.line;
+            case Stmt.Print print -> print.line;
+            case Stmt.Var var -> var.name.line;
+            case Stmt.Block block -> block.line;
+            case Expr.Grouping grouping -> line(grouping.expression);
+            case Expr.Variable variable -> variable.name.line;
+            case Expr.Assign assign -> assign.name.line;
+            case Expr.Unary unary -> unary.operator.line;
+            case Expr.Binary binary -> binary.operator.line;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package lox;
+
+/**
+ * The tree-walking Interpreter with every statement and expression counted and
+ * timed by a Profiler, for --profile. The hooks are overrides in this class
+ * alone, so the Interpreter itself pays nothing for them when not profiling.
+ */
+class ProfilingInterpreter extends Interpreter {
+    final Profiler profiler = new Profiler();
+
+    @Override
+    void execute(Stmt stmt) {
+        profiler.enter(stmt);
+        try {
+            super.execute(stmt);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        // evaluateNumber() falls back to evaluate() on the node it's already in.
+        if (profiler.current() == expr) return super.evaluate(expr);
+        profiler.enter(expr);
+        try {
+            return super.evaluate(expr);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    double evaluateNumber(Expr expr) {
+        // And visitUnaryExpr() passes a negation it's already in to evaluateNumber().
+        if (profiler.current() == expr) return super.evaluateNumber(expr);
+        profiler.enter(expr);
+        try {
+            return super.evaluateNumber(expr);
+        } finally {
+            profiler.exit();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * A parsed and resolved script, for running in any number of Contexts at
+ * once. Resolution writes each variable's depth and slot into the tree, so
+ * it's done here, once, before the program is shared. After that nothing
+ * changes the tree: the plain Interpreter only reads it.
+ */
+public final class Program {
+    private final List<Stmt> statements;
+    private final List<Diagnostics.Diagnostic> errors;
+    // Only this program's names. Nothing is interned in it after parsing.
+    private final SymbolTable symbols;
+
+    private Program(List<Stmt> statements, List<Diagnostics.Diagnostic> errors, SymbolTable symbols) {
+        this.statements = statements;
+        this.errors = errors;
+        this.symbols = symbols;
+    }
+
+    public static Program parse(String source) {
+        Diagnostics diagnostics = new Diagnostics();
+        SymbolTable symbols = new SymbolTable();
+        List<Stmt> statements = Lox.reportingTo(diagnostics,
+                () -> new Parser(new Scanner(source, 1, symbols).scanTokens()).parse());
+        // With syntax errors there are holes in the tree, and it's never run.
+        if (diagnostics.hadError) return new Program(List.of(), diagnostics.all(), symbols);
+        new Resolver().resolve(statements);
+        return new Program(List.copyOf(statements), List.of(), symbols);
+    }
+
+    // The syntax errors, which every Context that runs the program reports.
+    public List<Diagnostics.Diagnostic> errors() {
+        return errors;
+    }
+
+    List<Stmt> statements() {
+        return statements;
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+}
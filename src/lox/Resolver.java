@@ -0,0 +1,149 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static pass run between the parser and the interpreter. Every local variable
+ * reference gets the number of frames to walk up (depth) and its index in that
+ * frame (slot). References that don't resolve to a block scope are left at
+ * depth -1 and looked up as globals at runtime.
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static class Scope {
+        final Map<Symbol, Integer> slots = new HashMap<>();
+        // Blocks that declare nothing don't get a frame, so they don't count towards depth.
+        final boolean hasFrame;
+
+        Scope(boolean hasFrame) {
+            this.hasFrame = hasFrame;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Declarations can only appear directly in a block, so whether it needs a
+        // frame is known before any of the block's references are resolved.
+        boolean declares = false;
+        for (Stmt statement : stmt.statements) {
+            if (statement instanceof Stmt.Var) {
+                declares = true;
+                break;
+            }
+        }
+
+        Scope scope = new Scope(declares);
+        scopes.add(scope);
+        resolve(stmt.statements);
+        scopes.removeLast();
+        // One slot per distinct name, since a redeclaration reuses its slot.
+        stmt.slots = scope.slots.size();
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer runs before the name exists, so it still sees any outer variable.
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        if (scopes.isEmpty()) return null;
+
+        Map<Symbol, Integer> slots = scopes.getLast().slots;
+        // Redeclaring a name in the same block reuses its slot.
+        Integer slot = slots.get(stmt.name.symbol);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(stmt.name.symbol, slot);
+        }
+        stmt.slot = slot;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        int[] local = resolveLocal(expr.name);
+        if (local != null) {
+            expr.depth = local[0];
+            expr.slot = local[1];
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        int[] local = resolveLocal(expr.name);
+        if (local != null) {
+            expr.depth = local[0];
+            expr.slot = local[1];
+        }
+        return null;
+    }
+
+    // Returns {depth, slot} of the innermost declaration of name, or null if it's a global.
+    private int[] resolveLocal(Token name) {
+        int depth = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            Integer slot = scope.slots.get(name.symbol);
+            if (slot != null) return new int[] {depth, slot};
+            if (scope.hasFrame) depth++;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+}
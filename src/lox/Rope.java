@@ -0,0 +1,81 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A Lox string made by +, kept as its two halves instead of copying them, so
+ * building a long string a piece at a time is linear rather than quadratic.
+ * The characters are only put together the first time something looks at
+ * them (printing, comparing, saving), and then kept.
+ *
+ * A Lox string value is any CharSequence: a String for literals and short
+ * results, or a Rope.
+ */
+final class Rope implements CharSequence {
+    // Shorter results are copied straight into a String, which is cheaper than a node.
+    static final int MIN_LENGTH = 256;
+
+    private final int length;
+    // The halves, each a String or a Rope, until flattened.
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < 0) throw new OutOfMemoryError("String too long");
+        if (length < MIN_LENGTH) return left.toString() + right;
+        if (right.isEmpty()) return left;
+        if (left.isEmpty()) return right;
+        // Appending a short piece to a short tail joins them, so the leaves don't stay tiny.
+        if (left instanceof Rope rope && rope.flat == null && rope.right.length() + right.length() < MIN_LENGTH) {
+            return new Rope(rope.left, rope.right.toString() + right, length);
+        }
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+
+        // Without recursion: a string built by appending is a chain as deep as the number of appends.
+        StringBuilder builder = new StringBuilder(length);
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                builder.append(piece.toString());
+            }
+        }
+        flat = builder.toString();
+        left = null;
+        right = null;
+        return flat;
+    }
+}
@@ -2,8 +2,18 @@ package lox;
 
 class RuntimeError extends RuntimeException {
     final Token token;
+    final int line;
+
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    // Used where only a line is kept rather than tokens, like the VM's line table.
+    RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
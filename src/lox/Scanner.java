@@ -1,6 +1,8 @@
 package lox;
 
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,22 +28,102 @@ public class Scanner {
         keywords.put("var", TokenType.VAR);
         keywords.put("while", TokenType.WHILE);
     }
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    // The keywords again, grouped by first letter, so an identifier can be
+    // checked against them in place without taking its text first.
+    private static final String[][] keywordsByInitial = new String[26][];
+    static {
+        for (String keyword : keywords.keySet()) {
+            int initial = keyword.charAt(0) - 'a';
+            String[] group = keywordsByInitial[initial];
+            group = group == null ? new String[1] : Arrays.copyOf(group, group.length + 1);
+            group[group.length - 1] = keyword;
+            keywordsByInitial[initial] = group;
+        }
+    }
+    // Integers up to 2^53 are exact doubles, as are powers of ten up to 10^22.
+    private static final long MAX_EXACT = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Source source;
+    // Where identifiers are interned.
+    private final SymbolTable symbols;
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // The token scanToken() just produced, if any.
+    private Token scanned = null;
+    // Where tokens go instead when scanning into a TokenBuffer.
+    private TokenBuffer buffer = null;
+
     Scanner(String source) {
+        this(source, 1);
+    }
+
+    // For a piece of a larger source that starts on the given line.
+    Scanner(String source, int line) {
+        this(source, line, SymbolTable.SHARED);
+    }
+
+    Scanner(String source, int line, SymbolTable symbols) {
+        this.source = Source.of(source);
+        this.symbols = symbols;
+        this.line = line;
+    }
+
+    // Reads the source in chunks as tokens are asked for, rather than all up front.
+    Scanner(Reader source) {
+        this(Source.of(source));
+    }
+
+    Scanner(Source source) {
         this.source = source;
+        this.symbols = SymbolTable.SHARED;
     }
 
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // Scans the whole source into a TokenBuffer, without creating any Tokens.
+    // The source has to stay readable, so this isn't for a Reader.
+    TokenBuffer scanBuffer() {
+        buffer = new TokenBuffer(source);
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
+        buffer.add(TokenType.EOF, current, 0, line, null);
+        return buffer;
+    }
+
+    // How much of the source has been scanned: all of it, once EOF has been returned.
+    // In characters, or in bytes for a memory-mapped file.
+    int sourceSize() {
+        return current;
+    }
+
+    // Scans and returns the next token. Once the source is exhausted, returns EOF.
+    Token nextToken() {
+        while (!isAtEnd()) {
+            start = current;
+            source.discardBefore(start);
+            scanToken();
+            if (scanned != null) {
+                Token token = scanned;
+                scanned = null;
+                return token;
+            }
+        }
+        return new Token(TokenType.EOF, "", null, line);
     }
 
     private void scanToken() {
@@ -84,14 +166,20 @@ public class Scanner {
                 } else if (isAlphaNumeric(c)) {
                   identifier();
                 } else {
-                    Lox.error(line, "Unexpected character."); break;
+                    Lox.error(line, "Unexpected character.");
+                    // Skip the rest of a multi-byte character in a byte source. One that
+                    // needs a surrogate pair is two characters in a String, so two errors.
+                    int width = source.width(start);
+                    if (width == 4) Lox.error(line, "Unexpected character.");
+                    current = start + width;
+                    break;
                 }
             }
         }
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !source.has(current);
     }
 
     private char advance() {
@@ -126,7 +214,7 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (!source.has(current + 1)) return '\0';
         return source.charAt(current+1);
     }
 
@@ -138,36 +226,75 @@ public class Scanner {
 
         if (isAtEnd()) {
             Lox.error(line, "Unterminated string.");
+            return;
         }
 
         advance();
 
         // TODO: support escape sequences by converting them to actual values here
-        String value = source.substring(start+1, current-1);
+        String value = source.text(start+1, current-1);
         addToken(TokenType.STRING, value);
 
     }
 
     private void number() {
-        while(isDigit(peek())) advance();
+        // The digits are accumulated while scanning, instead of parsing the text
+        // afterwards. For literals with up to 15 or so digits this is exact: both the
+        // digits and the power of ten are exact doubles, so the one division is
+        // correctly rounded. Anything longer falls back to Double.parseDouble().
+        current = start;
+        long digits = 0;
+        int decimals = 0;
+        while (isDigit(peek())) digits = appendDigit(digits, advance());
 
         if (peek() == '.' && isDigit(peekNext())) {
             advance();
-            while (isDigit(peek())) advance();
+            while (isDigit(peek())) {
+                digits = appendDigit(digits, advance());
+                decimals++;
+            }
         }
 
-        String value = source.substring(start, current);
-        // TODO: catch exception and show error
-        double num = Double.parseDouble(value);
+        double num;
+        if (digits >= 0 && digits <= MAX_EXACT && decimals < POWERS_OF_TEN.length) {
+            num = digits / POWERS_OF_TEN[decimals];
+        } else {
+            num = Double.parseDouble(source.text(start, current));
+        }
         addToken(TokenType.NUMBER, num);
     }
 
+    // Returns -1 once there are more digits than a double holds exactly.
+    private static long appendDigit(long digits, char digit) {
+        if (digits < 0 || digits > MAX_EXACT) return -1;
+        return digits * 10 + (digit - '0');
+    }
+
     private void identifier() {
         while(isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType token = keywords.get(text);
-        if (token == null) token = TokenType.IDENTIFIER;
-        addToken(token);
+        TokenType type = keyword();
+        if (type == TokenType.IDENTIFIER) {
+            addToken(type, symbols.intern(source, start, current));
+        } else {
+            addToken(type);
+        }
+    }
+
+    private TokenType keyword() {
+        char initial = source.charAt(start);
+        if (initial < 'a' || initial > 'z') return TokenType.IDENTIFIER;
+        String[] group = keywordsByInitial[initial - 'a'];
+        if (group == null) return TokenType.IDENTIFIER;
+
+        candidates:
+        for (String keyword : group) {
+            if (keyword.length() != current - start) continue;
+            for (int i = 1; i < keyword.length(); i++) {
+                if (source.charAt(start + i) != keyword.charAt(i)) continue candidates;
+            }
+            return keywords.get(keyword);
+        }
+        return TokenType.IDENTIFIER;
     }
 
     private void addToken(TokenType type) {
@@ -175,8 +302,17 @@ public class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line, literal);
+            return;
+        }
+        // An identifier's text is already in its symbol, so it isn't copied again.
+        if (literal instanceof Symbol symbol) {
+            scanned = new Token(type, symbol.name, null, line, symbol);
+            return;
+        }
+        String text = source.text(start, current);
+        scanned = new Token(type, text, literal, line);
     }
 
 }
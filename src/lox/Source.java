@@ -0,0 +1,181 @@
+package lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Characters the Scanner reads from, addressed by absolute offset. Either a
+ * String held in memory, a Reader consumed in fixed-size chunks (in which
+ * case only the text from the start of the current token onwards is kept),
+ * or the bytes of a memory-mapped UTF-8 file.
+ */
+abstract class Source {
+    // Whether there is a character at index, reading more input if needed.
+    abstract boolean has(int index);
+
+    // The character at index. Only valid after has(index) returned true.
+    abstract char charAt(int index);
+
+    abstract String text(int start, int end);
+
+    // Characters before index won't be asked for again.
+    void discardBefore(int index) {}
+
+    // How many offsets the character starting at index takes up. Only more than
+    // one for non-ASCII characters in a byte source.
+    int width(int index) {
+        return 1;
+    }
+
+    static Source of(String text) {
+        return new StringSource(text);
+    }
+
+    static Source of(Reader reader) {
+        return new ReaderSource(reader);
+    }
+
+    // Maps a UTF-8 file into memory and scans its bytes in place.
+    static Source map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static class StringSource extends Source {
+        private final String text;
+
+        StringSource(String text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean has(int index) {
+            return index < text.length();
+        }
+
+        @Override
+        char charAt(int index) {
+            return text.charAt(index);
+        }
+
+        @Override
+        String text(int start, int end) {
+            return text.substring(start, end);
+        }
+    }
+
+    private static class ReaderSource extends Source {
+        private static final int CHUNK_SIZE = 8192;
+
+        private final Reader reader;
+        // Holds the characters from offset to offset + length.
+        private char[] buffer = new char[CHUNK_SIZE];
+        private int offset = 0;
+        private int length = 0;
+        private int discarded = 0;
+        private boolean eof = false;
+
+        ReaderSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        boolean has(int index) {
+            while (index >= offset + length) {
+                if (!fill()) return false;
+            }
+            return true;
+        }
+
+        @Override
+        char charAt(int index) {
+            if (index >= offset + length) throw new StringIndexOutOfBoundsException(index);
+            return buffer[index - offset];
+        }
+
+        @Override
+        String text(int start, int end) {
+            return new String(buffer, start - offset, end - start);
+        }
+
+        @Override
+        void discardBefore(int index) {
+            discarded = index;
+        }
+
+        private boolean fill() {
+            if (eof) return false;
+
+            int drop = discarded - offset;
+            if (drop > 0) {
+                System.arraycopy(buffer, drop, buffer, 0, length - drop);
+                offset += drop;
+                length -= drop;
+            }
+            // A single token longer than the buffer.
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            try {
+                int read = reader.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    eof = true;
+                    return false;
+                }
+                length += read;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Scans the bytes of the file directly. Every token the Scanner looks at
+     * character by character is ASCII, and in UTF-8 the bytes of a non-ASCII
+     * character can never be mistaken for ASCII. So bytes only need decoding
+     * when a token's text is taken, which is what makes a string literal with
+     * non-ASCII characters come out right.
+     */
+    private static class MappedSource extends Source {
+        private final MappedByteBuffer bytes;
+
+        MappedSource(MappedByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        boolean has(int index) {
+            return index < bytes.limit();
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char) (bytes.get(index) & 0xff);
+        }
+
+        @Override
+        String text(int start, int end) {
+            byte[] text = new byte[end - start];
+            bytes.get(start, text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        int width(int index) {
+            int lead = bytes.get(index) & 0xff;
+            if (lead >= 0xf0) return 4;
+            if (lead >= 0xe0) return 3;
+            if (lead >= 0xc0) return 2;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package lox;
+
+/**
+ * Execution mode where Binary and Unary nodes specialize themselves on the
+ * operand types they see the first time they run, e.g. into an "add doubles"
+ * or "concatenate strings" node. A specialized node only checks that its guess
+ * still holds. When it doesn't, the node falls back to the generic operator
+ * for good.
+ */
+class SpecializingInterpreter extends Interpreter {
+    // Values of Expr.Binary.state and Expr.Unary.state.
+    private static final int UNINITIALIZED = 0;
+    private static final int DOUBLES = 1;
+    private static final int STRINGS = 2;
+    private static final int BOOLEAN = 3;
+    private static final int GENERIC = 4;
+
+    int specialized = 0;
+    int deoptimized = 0;
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+
+        switch (expr.state) {
+            case DOUBLES -> {
+                if (left instanceof Double a && right instanceof Double b) {
+                    return doubles(expr.operator.type, a, b);
+                }
+            }
+            case STRINGS -> {
+                if (left instanceof CharSequence a && right instanceof CharSequence b) return Rope.concat(a, b);
+            }
+            case GENERIC -> {
+                return binary(expr.operator, left, right);
+            }
+        }
+
+        if (expr.state == UNINITIALIZED) {
+            if (left instanceof Double && right instanceof Double) {
+                expr.state = DOUBLES;
+                specialized++;
+            } else if (expr.operator.type == TokenType.PLUS
+                    && left instanceof CharSequence && right instanceof CharSequence) {
+                expr.state = STRINGS;
+                specialized++;
+            } else {
+                expr.state = GENERIC;
+            }
+        } else {
+            expr.state = GENERIC;
+            deoptimized++;
+        }
+        return binary(expr.operator, left, right);
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        Object value = evaluate(expr.right);
+
+        switch (expr.state) {
+            case DOUBLES -> {
+                if (value instanceof Double number) return -number;
+            }
+            case BOOLEAN -> {
+                if (value instanceof Boolean bool) return !bool;
+            }
+            case GENERIC -> {
+                return unary(expr.operator, value);
+            }
+        }
+
+        if (expr.state == UNINITIALIZED) {
+            if (expr.operator.type == TokenType.MINUS && value instanceof Double) {
+                expr.state = DOUBLES;
+                specialized++;
+            } else if (expr.operator.type == TokenType.BANG && value instanceof Boolean) {
+                expr.state = BOOLEAN;
+                specialized++;
+            } else {
+                expr.state = GENERIC;
+            }
+        } else {
+            expr.state = GENERIC;
+            deoptimized++;
+        }
+        return unary(expr.operator, value);
+    }
+
+    private static Object doubles(TokenType operator, double left, double right) {
+        return switch (operator) {
+            case TokenType.GREATER -> left > right;
+            case TokenType.GREATER_EQUAL -> left >= right;
+            case TokenType.LESS -> left < right;
+            case TokenType.LESS_EQUAL -> left <= right;
+            case TokenType.BANG_EQUAL -> Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            case TokenType.EQUAL_EQUAL -> Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            case TokenType.MINUS -> left - right;
+            case TokenType.STAR -> left * right;
+            case TokenType.SLASH -> left / right;
+            case TokenType.PLUS -> left + right;
+            default -> null; // Unreachable
+        };
+    }
+}
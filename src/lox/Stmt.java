@@ -10,8 +10,9 @@ abstract class Stmt {
     R visitBlockStmt(Block stmt);
   }
   static class Expression extends Stmt {
-    Expression(Expr expression) {
+    Expression(Expr expression, int line) {
       this.expression = expression;
+      this.line = line;
     }
 
     @Override
@@ -20,10 +21,12 @@ abstract class Stmt {
     }
 
     final Expr expression;
+    final int line;
   }
   static class Print extends Stmt {
-    Print(Expr expression) {
+    Print(Expr expression, int line) {
       this.expression = expression;
+      this.line = line;
     }
 
     @Override
@@ -32,6 +35,7 @@ abstract class Stmt {
     }
 
     final Expr expression;
+    final int line;
   }
   static class Var extends Stmt {
     Var(Token name, Expr initializer) {
@@ -46,10 +50,12 @@ abstract class Stmt {
 
     final Token name;
     final Expr initializer;
+    int slot = -1;
   }
   static class Block extends Stmt {
-    Block(List<Stmt> statements) {
+    Block(List<Stmt> statements, int line) {
       this.statements = statements;
+      this.line = line;
     }
 
     @Override
@@ -58,6 +64,10 @@ abstract class Stmt {
     }
 
     final List<Stmt> statements;
+    final int line;
+    int slots = 0;
+    int runs = 0;
+    java.lang.invoke.MethodHandle code;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
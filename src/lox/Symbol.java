@@ -0,0 +1,37 @@
+package lox;
+
+/**
+ * An interned identifier. A SymbolTable makes exactly one Symbol per
+ * distinct name, so symbols compare by identity, hash without looking at
+ * their text, and their dense ids can index an array of globals. Ids only
+ * mean something within the table that made them.
+ */
+final class Symbol {
+    final String name;
+    final int id;
+    private final int hash;
+
+    Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    boolean matches(Source source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (source.charAt(start + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,84 @@
+package lox;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifiers: exactly one Symbol per distinct name, with dense ids
+ * from 0. The command line shares one table, SHARED, across every script,
+ * REPL line, cached tree and image of a run. Each Program and Document has
+ * its own, so the names one embedded script uses don't grow the globals of
+ * any other, and are freed along with it.
+ */
+final class SymbolTable {
+    static final SymbolTable SHARED = new SymbolTable();
+
+    private Symbol[] table = new Symbol[16];
+    private Symbol[] byId = new Symbol[8];
+    private int count = 0;
+
+    Symbol intern(String name) {
+        return intern(Source.of(name), 0, name.length());
+    }
+
+    // Interns the identifier at [start, end) of the source. Its text is only
+    // copied out the first time the name is seen.
+    synchronized Symbol intern(Source source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int index = find(source, start, end, hash);
+        if (table[index] != null) return table[index];
+
+        Symbol symbol = new Symbol(source.text(start, end), count, hash);
+        table[index] = symbol;
+        if (count == byId.length) byId = Arrays.copyOf(byId, count * 2);
+        byId[count++] = symbol;
+        // Keep the table at most half full.
+        if (count * 2 > table.length) rehash();
+        return symbol;
+    }
+
+    // The symbol for name if it's been interned, without interning it. Null otherwise.
+    synchronized Symbol lookup(String name) {
+        return table[find(Source.of(name), 0, name.length(), name.hashCode())];
+    }
+
+    // How many symbols there are. Every id is less than this.
+    synchronized int count() {
+        return count;
+    }
+
+    synchronized Symbol byId(int id) {
+        return byId[id];
+    }
+
+    // The slot holding the name, or the empty one where it would go.
+    private int find(Source source, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        for (Symbol symbol = table[index]; symbol != null; symbol = table[index]) {
+            if (symbol.hashCode() == hash && symbol.matches(source, start, end)) return index;
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // Names like v1, v2, v3 have hashes next to each other, which would fill runs of
+    // neighbouring slots that every later probe has to walk. Scatter them first.
+    private static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        table = new Symbol[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int index = spread(byId[id].hashCode()) & mask;
+            while (table[index] != null) index = (index + 1) & mask;
+            table[index] = byId[id];
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package lox;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+/**
+ * Tree-walking interpreter (tier 0) that counts how often each block runs. Once
+ * one reaches the threshold it is compiled to JVM bytecode by JitCompiler
+ * (tier 1) and runs as compiled code from then on. The count and the code are
+ * kept on the block itself, so they go when its program does.
+ */
+class TieredInterpreter extends Interpreter {
+    private final int threshold;
+    private final boolean trace;
+
+    TieredInterpreter(int threshold, boolean trace) {
+        this.threshold = threshold;
+        this.trace = trace;
+    }
+
+    @Override
+    void interpret(List<Stmt> statements) {
+        // Each top-level list is run once and then dropped, so it can only reach a threshold
+        // of 1, and there's nothing to count for it.
+        MethodHandle code = threshold == 1 ? compile("top-level statements", statements, 0, 1) : null;
+        if (code == null) {
+            super.interpret(statements);
+            return;
+        }
+        try {
+            run(code);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.code == null) {
+            // Only try once. If it doesn't compile, the block stays in tier 0.
+            if (stmt.runs == threshold || ++stmt.runs != threshold) return super.visitBlockStmt(stmt);
+            stmt.code = compile("block", stmt.statements, stmt.slots, stmt.runs);
+            if (stmt.code == null) return super.visitBlockStmt(stmt);
+        }
+        run(stmt.code);
+        return null;
+    }
+
+    private MethodHandle compile(String kind, List<Stmt> statements, int slots, int runs) {
+        MethodHandle code = JitCompiler.compile(statements, slots, out);
+        if (trace) {
+            String outcome = code == null ? "too large to compile" : "promoted to tier 1";
+            System.err.println(STR."[jit] \{describe(kind, statements)} \{outcome} after \{runs} runs");
+        }
+        return code;
+    }
+
+    private void run(MethodHandle code) {
+        try {
+            code.invokeExact(environment, globals);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(String kind, List<Stmt> statements) {
+        int line = statements.isEmpty() ? -1 : Profiler.line(statements.getFirst());
+        String where = line < 0 ? "" : STR." at line \{line}";
+        return STR."\{kind}\{where} (\{statements.size()} statements)";
+    }
+}
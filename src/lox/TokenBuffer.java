@@ -0,0 +1,165 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scanned tokens stored as parallel primitive arrays over the source text,
+ * instead of one Token object (and lexeme String) per token. A Token is only
+ * created when the parser asks for one, and only number and string literals
+ * need their lexeme copied out of the source to do it.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    // Lexemes of the tokens whose text is always the same, indexed by ordinal.
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+    static {
+        for (TokenType type : TYPES) {
+            FIXED_LEXEMES[type.ordinal()] = switch (type) {
+                case LEFT_PAREN -> "(";
+                case RIGHT_PAREN -> ")";
+                case LEFT_BRACE -> "{";
+                case RIGHT_BRACE -> "}";
+                case COMMA -> ",";
+                case DOT -> ".";
+                case MINUS -> "-";
+                case PLUS -> "+";
+                case SEMICOLON -> ";";
+                case SLASH -> "/";
+                case STAR -> "*";
+                case BANG -> "!";
+                case BANG_EQUAL -> "!=";
+                case EQUAL -> "=";
+                case EQUAL_EQUAL -> "==";
+                case GREATER -> ">";
+                case GREATER_EQUAL -> ">=";
+                case LESS -> "<";
+                case LESS_EQUAL -> "<=";
+                case IDENTIFIER, STRING, NUMBER -> null;
+                case EOF -> "";
+                default -> type.name().toLowerCase(); // Keywords
+            };
+        }
+    }
+
+    // The lexeme every token of this type has, or null if it depends on the source.
+    static String fixedLexeme(TokenType type) {
+        return FIXED_LEXEMES[type.ordinal()];
+    }
+
+    private final Source source;
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] lines = new int[1024];
+    // Index into literals, or -1 for tokens without one. An identifier's
+    // literal is its Symbol.
+    private int[] literalIndexes = new int[1024];
+    private final List<Object> literals = new ArrayList<>();
+    private int count = 0;
+
+    TokenBuffer(Source source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            literalIndexes = Arrays.copyOf(literalIndexes, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        if (literal == null) {
+            literalIndexes[count] = -1;
+        } else {
+            literalIndexes[count] = literals.size();
+            literals.add(literal);
+        }
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    String lexeme(int index) {
+        String fixed = FIXED_LEXEMES[types[index]];
+        if (fixed != null) return fixed;
+        if (literals.get(literalIndexes[index]) instanceof Symbol symbol) return symbol.name;
+        return source.text(starts[index], starts[index] + lengths[index]);
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    Object literal(int index) {
+        int literal = literalIndexes[index];
+        return literal < 0 ? null : literals.get(literal);
+    }
+
+    Token token(int index) {
+        Object value = literal(index);
+        if (value instanceof Symbol symbol) {
+            return new Token(type(index), symbol.name, null, lines[index], symbol);
+        }
+        return new Token(type(index), lexeme(index), value, lines[index]);
+    }
+
+    TokenCursor cursor() {
+        return new TokenCursor() {
+            private int current = 0;
+
+            @Override
+            public TokenType type() {
+                return TokenBuffer.this.type(current);
+            }
+
+            @Override
+            public TokenType previousType() {
+                return TokenBuffer.this.type(current - 1);
+            }
+
+            @Override
+            public Token current() {
+                return token(current);
+            }
+
+            @Override
+            public Token previous() {
+                return token(current - 1);
+            }
+
+            @Override
+            public int currentLine() {
+                return line(current);
+            }
+
+            @Override
+            public int previousLine() {
+                return line(current - 1);
+            }
+
+            @Override
+            public Object previousValue() {
+                return literal(current - 1);
+            }
+
+            @Override
+            public void advance() {
+                current++;
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package lox;
+
+import java.util.function.Supplier;
+
+/**
+ * The Parser's view of its input: the current token and the one before it.
+ * Token objects are only asked for when the parser keeps one in the AST or
+ * reports an error at it. Checking a token's type doesn't need one.
+ */
+interface TokenCursor {
+    TokenType type();
+
+    TokenType previousType();
+
+    Token current();
+
+    Token previous();
+
+    int currentLine();
+
+    int previousLine();
+
+    // The previous token's literal value, or its Symbol if it's an identifier.
+    Object previousValue();
+
+    // Moves to the next token. Never called once the current token is EOF.
+    void advance();
+
+    // Reads tokens one at a time as the parser advances.
+    static TokenCursor of(Supplier<Token> tokens) {
+        return new TokenCursor() {
+            private Token current = tokens.get();
+            private Token previous;
+
+            @Override
+            public TokenType type() {
+                return current.type;
+            }
+
+            @Override
+            public TokenType previousType() {
+                return previous.type;
+            }
+
+            @Override
+            public Token current() {
+                return current;
+            }
+
+            @Override
+            public Token previous() {
+                return previous;
+            }
+
+            @Override
+            public int currentLine() {
+                return current.line;
+            }
+
+            @Override
+            public int previousLine() {
+                return previous.line;
+            }
+
+            @Override
+            public Object previousValue() {
+                return previous.type == TokenType.IDENTIFIER ? previous.symbol : previous.literal;
+            }
+
+            @Override
+            public void advance() {
+                previous = current;
+                current = tokens.get();
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package lox;
+
+/**
+ * Runs a compiled Chunk on an operand stack. Produces the same output and
+ * runtime errors as the tree-walking Interpreter.
+ */
+class VM {
+    final Environment globals = new Environment();
+    OutputSink out = OutputSink.stdout();
+
+    void interpret(Chunk chunk) {
+        try {
+            run(chunk);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    private void run(Chunk chunk) {
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants.toArray();
+        Object[] stack = new Object[chunk.maxStack];
+        int sp = 0;
+        int ip = 0;
+
+        while (true) {
+            int op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT -> stack[sp++] = constants[code[ip++]];
+                case OpCode.NIL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = true;
+                case OpCode.FALSE -> stack[sp++] = false;
+                case OpCode.POP -> sp--;
+                case OpCode.POPN -> sp -= code[ip++];
+                case OpCode.GET_LOCAL -> stack[sp++] = stack[code[ip++]];
+                case OpCode.SET_LOCAL -> stack[code[ip++]] = stack[sp - 1];
+                case OpCode.GET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[code[ip++]];
+                    stack[sp++] = globals.get(name, lineAt(chunk, ip));
+                }
+                case OpCode.DEFINE_GLOBAL -> globals.define((Symbol) constants[code[ip++]], stack[--sp]);
+                case OpCode.SET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[code[ip++]];
+                    globals.assign(name, lineAt(chunk, ip), stack[sp - 1]);
+                }
+                case OpCode.EQUAL, OpCode.NOT_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumberOperands(chunk, ip, left, right);
+                    stack[sp - 1] = left.equals(right) == (op == OpCode.EQUAL);
+                }
+                case OpCode.GREATER, OpCode.GREATER_EQUAL, OpCode.LESS, OpCode.LESS_EQUAL,
+                     OpCode.SUBTRACT, OpCode.MULTIPLY, OpCode.DIVIDE -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumberOperands(chunk, ip, left, right);
+                    double a = (double) left;
+                    double b = (double) right;
+                    stack[sp - 1] = switch (op) {
+                        case OpCode.GREATER -> a > b;
+                        case OpCode.GREATER_EQUAL -> a >= b;
+                        case OpCode.LESS -> a < b;
+                        case OpCode.LESS_EQUAL -> a <= b;
+                        case OpCode.SUBTRACT -> a - b;
+                        case OpCode.MULTIPLY -> a * b;
+                        default -> a / b;
+                    };
+                }
+                case OpCode.ADD -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a + b;
+                    } else if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                        stack[sp - 1] = Rope.concat(a, b);
+                    } else {
+                        throw new RuntimeError(lineAt(chunk, ip), "Operands must both be numbers or strings");
+                    }
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                case OpCode.NEGATE -> {
+                    if (!(stack[sp - 1] instanceof Double value)) {
+                        throw new RuntimeError(lineAt(chunk, ip), "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -value;
+                }
+                case OpCode.PRINT -> out.printValue(stack[--sp]);
+                case OpCode.RETURN -> {
+                    return;
+                }
+                default -> throw new IllegalStateException(STR."Unknown opcode \{op}");
+            }
+        }
+    }
+
+    // The line of the instruction that just executed; ip already points past it.
+    private int lineAt(Chunk chunk, int ip) {
+        return chunk.lines[ip - 1];
+    }
+
+    private void checkNumberOperands(Chunk chunk, int ip, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(lineAt(chunk, ip), "Operands must be a numbers.");
+    }
+
+    private boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+}
@@ -14,19 +14,18 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Binary : Expr left, Token operator, Expr right",
+                "Binary : Expr left, Token operator, Expr right ; int state",
                 "Grouping : Expr expression",
                 "Literal : Object value",
-                "Unary : Token operator, Expr right",
-                "Variable : Token name",
-                "Assign : Token name, Expr value"
+                "Unary : Token operator, Expr right ; int state",
+                "Variable : Token name ; int depth = -1, int slot = -1",
+                "Assign : Token name, Expr value ; int depth = -1, int slot = -1"
         ));
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Expression : Expr expression",
-                "Print : Expr expression",
-                "Var : Token name, Expr initializer",
-                "Block : List<Stmt> statements"
-
+                "Expression : Expr expression, int line",
+                "Print : Expr expression, int line",
+                "Var : Token name, Expr initializer ; int slot = -1",
+                "Block : List<Stmt> statements, int line ; int slots = 0, int runs = 0, java.lang.invoke.MethodHandle code"
         ));
     }
 
@@ -43,8 +42,12 @@ public class GenerateAst {
 
         for (String type: types) {
             String classname = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, classname, fields);
+            // Fields after a ';' are not constructor parameters. They are filled in
+            // after parsing, by the Resolver, by self-specializing execution, or by
+            // the tiered interpreter as it counts and compiles blocks.
+            String[] fields = type.split(":")[1].split(";");
+            String resolved = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, classname, fields[0].trim(), resolved);
         }
 
         // The base accept() method.
@@ -55,7 +58,8 @@ public class GenerateAst {
         writer.close();
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className,
+                                   String fieldList, String resolvedList) {
         writer.println(STR."  static class \{className} extends \{baseName} {");
 
         // Constructor.
@@ -82,6 +86,11 @@ public class GenerateAst {
         for (String field : fields) {
             writer.println(STR."    final \{field};");
         }
+        if (resolvedList != null) {
+            for (String field : resolvedList.split(", ")) {
+                writer.println(STR."    \{field};");
+            }
+        }
 
         writer.println("  }");
     }
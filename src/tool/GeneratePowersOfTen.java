@@ -0,0 +1,50 @@
+package tool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+// Writes the table of powers of ten that lox.NumberFormatter looks up.
+public class GeneratePowersOfTen {
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: generate_powers_of_ten [output_directory]");
+            System.exit(64);
+        }
+        String path = STR."\{args[0]}/PowersOfTen.java";
+        PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
+        writer.println("package lox;");
+        writer.println();
+        writer.println("// Generated by tool.GeneratePowersOfTen.");
+        writer.println("final class PowersOfTen {");
+        writer.println(STR."  static final int K_MIN = \{K_MIN};");
+        writer.println(STR."  static final int K_MAX = \{K_MAX};");
+        writer.println();
+        writer.println("  // For each k from K_MIN, 10^-k = beta 2^r with 2^125 <= beta < 2^126, and");
+        writer.println("  // g = floor(beta) + 1, as its high and low 63 bits.");
+        writer.println("  static final long[] G = {");
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            // r = floor(log2(10^-k)) - 125
+            int r = (int) (-k * 913_124_641_741L >> 38) - 125;
+            BigInteger beta;
+            if (k <= 0) {
+                BigInteger power = BigInteger.TEN.pow(-k);
+                beta = r >= 0 ? power.shiftRight(r) : power.shiftLeft(-r);
+            } else {
+                beta = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+            }
+            BigInteger g = beta.add(BigInteger.ONE);
+            if (g.bitLength() != 126) throw new IllegalStateException(STR."Bad g for k = \{k}");
+            long high = g.shiftRight(63).longValueExact();
+            long low = g.longValue() & Long.MAX_VALUE;
+            writer.println(String.format("    0x%016xL, 0x%016xL, // %d", high, low, k));
+        }
+        writer.println("  };");
+        writer.println("}");
+        writer.close();
+    }
+}